@@ -0,0 +1,166 @@
+package de.kontext_e.jqassistant.plugin.antlr.impl;
+
+import de.kontext_e.jqassistant.plugin.antlr.api.config.GrammarConfiguration;
+import de.kontext_e.jqassistant.plugin.antlr.api.config.ParserMode;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The grammars of the tests together with generators for synthetic inputs of a given size.
+ */
+enum BenchmarkGrammar {
+
+    LOGGING("logging/Logging.g4", "log", ".logging") {
+        @Override
+        String createInput(int size) throws IOException {
+            String entries = Files.readString(Path.of(TEST_RESOURCES, "logging/output.logging"));
+            return entries.repeat(size);
+        }
+    },
+
+    DOT("dot/DOT.g4", "graph", ".dot") {
+        @Override
+        String createInput(int size) {
+            StringBuilder input = new StringBuilder("digraph G {\n");
+            for (int i = 0; i < size; i++) {
+                input.append("\tsubgraph cluster_").append(i).append(" {\n")
+                        .append("\t\tnode [style=filled,color=white];\n")
+                        .append("\t\ta").append(i).append(" -> b").append(i).append(" -> c").append(i).append(";\n")
+                        .append("\t\tlabel = \"process #").append(i).append("\";\n")
+                        .append("\t}\n");
+            }
+            return input.append("}\n").toString();
+        }
+    },
+
+    EQUATION("equation/equation.g4", "equation", ".equation") {
+        @Override
+        String createInput(int size) {
+            StringBuilder input = new StringBuilder("x = cos (x, 12, 2*cos(7))");
+            for (int i = 1; i < size; i++) {
+                input.append(" + ").append(i).append(" * cos (x, 12, 2*cos(7))");
+            }
+            return input.append('\n').toString();
+        }
+    };
+
+    private static final String TEST_RESOURCES = "src/test/resources";
+
+    private final String grammarFile;
+    private final String grammarRoot;
+    private final String fileExtension;
+
+    BenchmarkGrammar(String grammarFile, String grammarRoot, String fileExtension) {
+        this.grammarFile = grammarFile;
+        this.grammarRoot = grammarRoot;
+        this.fileExtension = fileExtension;
+    }
+
+    /**
+     * @return the input, with size being the number of repetitions of the characteristic construct of the grammar
+     */
+    abstract String createInput(int size) throws IOException;
+
+    File writeInput(Path directory, int size) throws IOException {
+        Path inputFile = directory.resolve("input-" + size + fileExtension);
+        Files.writeString(inputFile, createInput(size));
+        return inputFile.toFile();
+    }
+
+    /**
+     * The file the grammar is resolved against, like the plugin configuration file during a scan.
+     */
+    static File getConfigFile() {
+        return new File(TEST_RESOURCES, "configFiles/config.yaml").getAbsoluteFile();
+    }
+
+    GrammarConfiguration toConfiguration(ParserMode mode) {
+        String absoluteGrammarFile = new File(TEST_RESOURCES, grammarFile).getAbsolutePath();
+        return new GrammarConfiguration() {
+            @Override
+            public Optional<String> optionalGrammarFile() {
+                return Optional.of(absoluteGrammarFile);
+            }
+
+            @Override
+            public Optional<String> parserJar() {
+                return Optional.empty();
+            }
+
+            @Override
+            public Optional<String> grammarRoot() {
+                return Optional.of(grammarRoot);
+            }
+
+            @Override
+            public Optional<String> grammarName() {
+                return Optional.empty();
+            }
+
+            @Override
+            public Optional<String> fileExtension() {
+                return Optional.of(fileExtension);
+            }
+
+            @Override
+            public Optional<List<String>> excludedFileLocations() {
+                return Optional.empty();
+            }
+
+            @Override
+            public Optional<List<String>> includedFileLocations() {
+                return Optional.empty();
+            }
+
+            @Override
+            public Optional<ParserMode> mode() {
+                return Optional.of(mode);
+            }
+
+            @Override
+            public Optional<Boolean> twoStageParsing() {
+                return Optional.empty();
+            }
+
+            @Override
+            public Optional<Boolean> streaming() {
+                return Optional.empty();
+            }
+
+            @Override
+            public Optional<Boolean> profiling() {
+                return Optional.empty();
+            }
+
+            @Override
+            public Optional<List<String>> excludedRules() {
+                return Optional.empty();
+            }
+
+            @Override
+            public Optional<List<String>> excludedTokens() {
+                return Optional.empty();
+            }
+
+            @Override
+            public Optional<List<String>> leafRules() {
+                return Optional.empty();
+            }
+
+            @Override
+            public Optional<Boolean> collapseSingleChildRules() {
+                return Optional.empty();
+            }
+
+            @Override
+            public Optional<Boolean> lazy() {
+                return Optional.empty();
+            }
+        };
+    }
+}
@@ -0,0 +1,71 @@
+package de.kontext_e.jqassistant.plugin.antlr.impl;
+
+import de.kontext_e.jqassistant.plugin.antlr.api.config.ParserMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link AntlrTool#getLexerAndParser()}: cold generates and compiles lexer and parser into an empty
+ * directory, warm finds them already generated from the same grammar fingerprint.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class LexerAndParserGenerationBenchmark {
+
+    @Param({"LOGGING", "DOT", "EQUATION"})
+    private BenchmarkGrammar grammar;
+
+    private Path generatedFilesDirectory;
+
+    @Setup(Level.Trial)
+    public void createDirectory() throws IOException {
+        generatedFilesDirectory = Files.createTempDirectory("antlr-benchmark");
+    }
+
+    @Setup(Level.Iteration)
+    public void generateOnce() throws IOException {
+        // the warm benchmark expects the lexer and parser to exist, the cold one deletes them again below
+        newAntlrTool().getLexerAndParser();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteDirectory() throws IOException {
+        Utils.deleteRecursively(generatedFilesDirectory);
+    }
+
+    @Benchmark
+    public String cold() throws IOException {
+        Utils.deleteRecursively(generatedFilesDirectory);
+        return newAntlrTool().getLexerAndParser();
+    }
+
+    @Benchmark
+    public String warm() throws IOException {
+        return newAntlrTool().getLexerAndParser();
+    }
+
+    private AntlrTool newAntlrTool() {
+        return new AntlrTool(grammar.toConfiguration(ParserMode.COMPILED), BenchmarkGrammar.getConfigFile(),
+                generatedFilesDirectory.toFile());
+    }
+}
@@ -0,0 +1,70 @@
+package de.kontext_e.jqassistant.plugin.antlr.impl;
+
+import de.kontext_e.jqassistant.plugin.antlr.api.config.ParserMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link AntlrTool#loadParserAndParseFile} on inputs of growing size, with the lexer and parser loaded once
+ * like during a scan.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+
+    @Param({"LOGGING", "DOT", "EQUATION"})
+    private BenchmarkGrammar grammar;
+
+    @Param({"COMPILED", "INTERPRETER"})
+    private ParserMode mode;
+
+    @Param({"1", "100", "10000"})
+    private int size;
+
+    private Path directory;
+    private AntlrTool antlrTool;
+    private ParserRuntime parserRuntime;
+    private File inputFile;
+
+    @Setup(Level.Trial)
+    public void loadParser() throws Exception {
+        directory = Files.createTempDirectory("antlr-benchmark");
+        antlrTool = new AntlrTool(grammar.toConfiguration(mode), BenchmarkGrammar.getConfigFile(), directory.toFile());
+        parserRuntime = mode == ParserMode.INTERPRETER
+                ? antlrTool.loadInterpretedParserRuntime()
+                : antlrTool.loadParserRuntime(antlrTool.getLexerAndParser());
+        inputFile = grammar.writeInput(directory, size);
+    }
+
+    @TearDown(Level.Trial)
+    public void closeParser() throws IOException {
+        parserRuntime.close();
+        Utils.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public ParseResult parse() throws IOException {
+        return antlrTool.loadParserAndParseFile(parserRuntime, inputFile);
+    }
+}
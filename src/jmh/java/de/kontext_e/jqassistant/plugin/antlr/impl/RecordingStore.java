@@ -0,0 +1,122 @@
+package de.kontext_e.jqassistant.plugin.antlr.impl;
+
+import com.buschmais.jqassistant.core.store.api.Store;
+import com.buschmais.xo.api.Query;
+import de.kontext_e.jqassistant.plugin.antlr.api.model.TokenDescriptor;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A store that keeps created descriptors and their properties in memory and answers the statements of the
+ * {@link BulkTreeWriter} with generated ids, so the writers can be measured without a database.
+ */
+class RecordingStore {
+
+    private final Store store = createProxy(Store.class, this::invokeStore);
+    private final List<Map<String, Object>> descriptors = new ArrayList<>();
+    private int executedQueries;
+
+    Store getStore() {
+        return store;
+    }
+
+    void clear() {
+        descriptors.clear();
+        executedQueries = 0;
+    }
+
+    private Object invokeStore(String method, Object[] arguments) {
+        switch (method) {
+            case "create":
+                return createDescriptor((Class<?>) arguments[0]);
+            case "executeQuery":
+                executedQueries++;
+                Map<?, ?> parameters = arguments.length > 1 ? (Map<?, ?>) arguments[1] : Collections.emptyMap();
+                return createResult(createRows(parameters));
+            default:
+                return null;
+        }
+    }
+
+    private Object createDescriptor(Class<?> type) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("id", (long) descriptors.size());
+        descriptors.add(properties);
+        return createProxy(type, (method, arguments) -> {
+            if (method.startsWith("set")) {
+                properties.put(method.substring(3), arguments[0]);
+                return null;
+            }
+            if (method.equals("getId")) return properties.get("id");
+            if (method.equals("getChildren")) return properties.computeIfAbsent("Children", key -> new ArrayList<>());
+            return properties.get(method.substring(3));
+        });
+    }
+
+    /**
+     * Answers the node creation statements with one row per node and the token statements with one row per token,
+     * relation statements return no rows.
+     */
+    private List<Map<String, Object>> createRows(Map<?, ?> parameters) {
+        Object tokens = parameters.get("tokens");
+        if (tokens != null) return createTokenRows((List<?>) tokens);
+        Object nodes = parameters.get("nodes");
+        if (nodes == null) return Collections.emptyList();
+
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (Object node : (List<?>) nodes) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("index", ((Number) ((Map<?, ?>) node).get("index")).longValue());
+            row.put("id", (long) descriptors.size());
+            descriptors.add(row);
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private List<Map<String, Object>> createTokenRows(List<?> tokens) {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (Object token : tokens) {
+            Map<String, Object> row = new HashMap<>();
+            ((Map<?, ?>) token).forEach((key, value) -> row.put((String) key, value));
+            row.put("token", createDescriptor(TokenDescriptor.class));
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Query.Result<Query.Result.CompositeRowObject> createResult(List<Map<String, Object>> rows) {
+        List<Query.Result.CompositeRowObject> rowObjects = new ArrayList<>();
+        for (Map<String, Object> row : rows) {
+            rowObjects.add(createProxy(Query.Result.CompositeRowObject.class, (method, arguments) ->
+                    method.equals("get") ? row.get((String) arguments[0]) : null));
+        }
+        return createProxy(Query.Result.class, (method, arguments) -> {
+            if (method.equals("iterator")) return rowObjects.iterator();
+            if (method.equals("hasResult")) return !rowObjects.isEmpty();
+            return null;
+        });
+    }
+
+    private interface Invocation {
+        Object invoke(String method, Object[] arguments);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T createProxy(Class<T> type, Invocation invocation) {
+        return (T) Proxy.newProxyInstance(RecordingStore.class.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, arguments) -> {
+                    if (method.getDeclaringClass() == Object.class) {
+                        return method.getName().equals("hashCode") ? System.identityHashCode(proxy)
+                                : method.getName().equals("equals") ? proxy == arguments[0] : type.getSimpleName();
+                    }
+                    return invocation.invoke(method.getName(), arguments == null ? new Object[0] : arguments);
+                });
+    }
+}
@@ -0,0 +1,96 @@
+package de.kontext_e.jqassistant.plugin.antlr.impl;
+
+import de.kontext_e.jqassistant.plugin.antlr.api.config.ParserMode;
+import de.kontext_e.jqassistant.plugin.antlr.api.config.WriterMode;
+import de.kontext_e.jqassistant.plugin.antlr.api.model.ScannedFileDescriptor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures flattening and writing a parse tree with {@link ParseTreeSaver} for both writer modes, with and without
+ * interned tokens. The store records the calls in memory instead of writing into a database, so the work of the
+ * plugin is measured on its own.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StoreBenchmark {
+
+    @Param({"LOGGING", "DOT", "EQUATION"})
+    private BenchmarkGrammar grammar;
+
+    @Param({"DESCRIPTOR", "BULK"})
+    private WriterMode writerMode;
+
+    @Param({"false", "true"})
+    private boolean internTokens;
+
+    @Param({"1", "100", "10000"})
+    private int size;
+
+    private ParseResult parseResult;
+    private RecordingStore store;
+    private ParseTreeSaver parseTreeSaver;
+
+    @Setup(Level.Trial)
+    public void parseInput() throws Exception {
+        Path directory = Files.createTempDirectory("antlr-benchmark");
+        try {
+            AntlrTool antlrTool = new AntlrTool(grammar.toConfiguration(ParserMode.INTERPRETER), BenchmarkGrammar.getConfigFile());
+            try (ParserRuntime parserRuntime = antlrTool.loadInterpretedParserRuntime()) {
+                parseResult = antlrTool.loadParserAndParseFile(parserRuntime, grammar.writeInput(directory, size));
+            }
+            store = new RecordingStore();
+            parseTreeSaver = new ParseTreeSaver(store.getStore(), loadConfiguration(directory));
+        } finally {
+            Utils.deleteRecursively(directory);
+        }
+    }
+
+    private ConfigurationProvider loadConfiguration(Path directory) throws IOException {
+        File configFile = directory.resolve("benchmark.yaml").toFile();
+        Files.writeString(configFile.toPath(), "jqassistant:\n" +
+                "  plugin:\n" +
+                "    antlr:\n" +
+                "      writerMode: " + writerMode.name().toLowerCase() + "\n" +
+                "      internTokens: " + internTokens + "\n" +
+                "      grammars:\n" +
+                "        - grammarFile: " + grammar.toConfiguration(ParserMode.INTERPRETER).grammarFile() + "\n");
+        ConfigurationProvider configurationProvider = new ConfigurationProvider();
+        configurationProvider.loadConfigurationFrom(configFile);
+        return configurationProvider;
+    }
+
+    @TearDown(Level.Iteration)
+    public void clearStore() {
+        store.clear();
+    }
+
+    @Benchmark
+    public ScannedFileDescriptor save() {
+        ScannedFileDescriptor scannedFile = store.getStore().create(ScannedFileDescriptor.class);
+        FileMetrics metrics = new FileMetrics(grammar.name(), grammar.name());
+        parseTreeSaver.saveParseTreesToNeo4J(parseTreeSaver.flatten(parseResult, TreePruning.NONE, metrics), scannedFile, metrics);
+        return scannedFile;
+    }
+}
@@ -0,0 +1,117 @@
+package de.kontext_e.jqassistant.plugin.antlr.api;
+
+import de.kontext_e.jqassistant.plugin.antlr.api.model.NodeDescriptor;
+import de.kontext_e.jqassistant.plugin.antlr.api.model.ScannedFileDescriptor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads the text of nodes stored with {@code ruleNodeText: offsets} from their UTF-8 encoded source file, which is
+ * memory-mapped instead of being read into memory. The offsets count code points like Antlr does, so they are
+ * translated into byte offsets with an index of every {@value #INDEX_INTERVAL}th code point, built once per file.
+ * Files larger than 2 GB can not be mapped.
+ */
+public class SourceText {
+
+    private static final int INDEX_INTERVAL = 4096;
+
+    private final MappedByteBuffer bytes;
+    private final int[] indexedByteOffsets;
+
+    private SourceText(MappedByteBuffer bytes) {
+        this.bytes = bytes;
+        this.indexedByteOffsets = indexByteOffsets(bytes);
+    }
+
+    public static SourceText of(ScannedFileDescriptor scannedFile) throws IOException {
+        String sourcePath = scannedFile.getSourcePath();
+        if (sourcePath == null) {
+            throw new IllegalArgumentException("The scanned file has not been stored with ruleNodeText offsets");
+        }
+        return of(Paths.get(sourcePath));
+    }
+
+    public static SourceText of(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel has been closed
+            return new SourceText(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * @return the text of the node, which is taken from the node itself if it carries no offsets
+     */
+    public String getText(NodeDescriptor node) {
+        if (node.getStartOffset() == null || node.getEndOffset() == null) return node.getText();
+        return getText(node.getStartOffset(), node.getEndOffset());
+    }
+
+    /**
+     * @return the text of the grammar root, which is taken from the scanned file itself if it carries no offsets
+     */
+    public String getText(ScannedFileDescriptor scannedFile) {
+        if (scannedFile.getStartOffset() == null || scannedFile.getEndOffset() == null) return scannedFile.getText();
+        return getText(scannedFile.getStartOffset(), scannedFile.getEndOffset());
+    }
+
+    /**
+     * @param startOffset the index of the first code point of the text
+     * @param endOffset   the index of the code point following the text
+     */
+    public String getText(int startOffset, int endOffset) {
+        int start = toByteOffset(startOffset);
+        // short texts are walked from their start instead of from the last indexed code point
+        int end = endOffset - startOffset < INDEX_INTERVAL
+                ? toByteOffset(endOffset, startOffset, start)
+                : toByteOffset(endOffset);
+        ByteBuffer text = bytes.duplicate();
+        text.position(start).limit(end);
+        return StandardCharsets.UTF_8.decode(text).toString();
+    }
+
+    private int toByteOffset(int codePointOffset) {
+        int indexed = Math.min(codePointOffset / INDEX_INTERVAL, indexedByteOffsets.length - 1);
+        return toByteOffset(codePointOffset, indexed * INDEX_INTERVAL, indexedByteOffsets[indexed]);
+    }
+
+    private int toByteOffset(int codePointOffset, int codePoint, int byteOffset) {
+        while (codePoint < codePointOffset && byteOffset < bytes.limit()) {
+            byteOffset += getSequenceLength(bytes.get(byteOffset));
+            codePoint++;
+        }
+        return Math.min(byteOffset, bytes.limit());
+    }
+
+    private static int[] indexByteOffsets(ByteBuffer bytes) {
+        // there are at most as many code points as bytes
+        int[] byteOffsets = new int[bytes.limit() / INDEX_INTERVAL + 1];
+        int indexed = 0;
+        int codePoint = 0;
+        for (int byteOffset = 0; byteOffset < bytes.limit(); byteOffset += getSequenceLength(bytes.get(byteOffset))) {
+            if (codePoint % INDEX_INTERVAL == 0) {
+                byteOffsets[indexed++] = byteOffset;
+            }
+            codePoint++;
+        }
+        return Arrays.copyOf(byteOffsets, Math.max(indexed, 1));
+    }
+
+    /**
+     * @return the number of bytes of the UTF-8 sequence starting with the byte, malformed bytes are decoded to one
+     * replacement character each
+     */
+    private static int getSequenceLength(byte leadingByte) {
+        if ((leadingByte & 0xE0) == 0xC0) return 2;
+        if ((leadingByte & 0xF0) == 0xE0) return 3;
+        if ((leadingByte & 0xF8) == 0xF0) return 4;
+        return 1;
+    }
+}
@@ -2,6 +2,7 @@ package de.kontext_e.jqassistant.plugin.antlr.api.config;
 
 import de.kontext_e.jqassistant.plugin.antlr.impl.Utils;
 import io.smallrye.config.ConfigMapping;
+import io.smallrye.config.WithName;
 
 import java.io.File;
 import java.util.ArrayList;
@@ -13,24 +14,48 @@ import static io.smallrye.config.ConfigMapping.NamingStrategy.VERBATIM;
 @ConfigMapping(namingStrategy = VERBATIM)
 public interface GrammarConfiguration {
 
-    String grammarFile();
+    /**
+     * @return the grammar file, or null for grammars that refer to a parser jar instead
+     */
+    default String grammarFile() {
+        return optionalGrammarFile().orElse(null);
+    }
+
+    @WithName("grammarFile")
+    Optional<String> optionalGrammarFile();
+
+    /**
+     * A jar of prebuilt lexers and parsers to be used instead of a grammar file, which then requires the grammarName.
+     */
+    Optional<String> parserJar();
+
+    /**
+     * @return the grammar file or else the parser jar, e.g. to be named in messages
+     */
+    default String getGrammarLocation() {
+        return optionalGrammarFile().or(this::parserJar).orElse("");
+    }
 
     Optional<String> grammarRoot();
 
     default String getGrammarRoot() {
-        return grammarRoot().orElse(Utils.getGrammarRoot(grammarFile()));
+        return grammarRoot().orElseGet(() -> optionalGrammarFile()
+                .map(Utils::getGrammarRoot)
+                .orElseGet(() -> getGrammarName().toLowerCase()));
     }
 
     Optional<String> grammarName();
 
     default String getGrammarName(){
-        return grammarName().orElse(Utils.getGrammarName(grammarFile()));
+        return grammarName().orElseGet(() -> Utils.getGrammarName(optionalGrammarFile().orElseThrow()));
     }
 
     Optional<String> fileExtension();
 
     default String getFileExtension() {
-        return fileExtension().orElse(Utils.getFileExtension(new File(grammarFile())));
+        return fileExtension().orElseGet(() -> optionalGrammarFile()
+                .map(grammarFile -> Utils.getFileExtension(new File(grammarFile)))
+                .orElseGet(() -> "." + getGrammarName().toLowerCase()));
     }
 
     Optional<List<String>> excludedFileLocations();
@@ -44,4 +69,58 @@ public interface GrammarConfiguration {
     default List<String> getIncludedFileLocations() {
         return includedFileLocations().orElse(new ArrayList<>());
     }
+
+    Optional<ParserMode> mode();
+
+    default ParserMode getMode() {
+        return mode().orElse(ParserMode.COMPILED);
+    }
+
+    Optional<Boolean> twoStageParsing();
+
+    default boolean getTwoStageParsing() {
+        return twoStageParsing().orElse(false);
+    }
+
+    Optional<Boolean> streaming();
+
+    default boolean getStreaming() {
+        return streaming().orElse(false);
+    }
+
+    Optional<Boolean> profiling();
+
+    default boolean getProfiling() {
+        return profiling().orElse(false);
+    }
+
+    Optional<List<String>> excludedRules();
+
+    default List<String> getExcludedRules() {
+        return excludedRules().orElse(new ArrayList<>());
+    }
+
+    Optional<List<String>> excludedTokens();
+
+    default List<String> getExcludedTokens() {
+        return excludedTokens().orElse(new ArrayList<>());
+    }
+
+    Optional<List<String>> leafRules();
+
+    default List<String> getLeafRules() {
+        return leafRules().orElse(new ArrayList<>());
+    }
+
+    Optional<Boolean> collapseSingleChildRules();
+
+    default boolean getCollapseSingleChildRules() {
+        return collapseSingleChildRules().orElse(false);
+    }
+
+    Optional<Boolean> lazy();
+
+    default boolean getLazy() {
+        return lazy().orElse(false);
+    }
 }
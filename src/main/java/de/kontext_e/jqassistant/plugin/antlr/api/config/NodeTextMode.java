@@ -0,0 +1,25 @@
+package de.kontext_e.jqassistant.plugin.antlr.api.config;
+
+public enum NodeTextMode {
+
+    /**
+     * Stores the full text of the node.
+     */
+    FULL,
+
+    /**
+     * Stores the text of the node up to a maximum length.
+     */
+    TRUNCATED,
+
+    /**
+     * Stores no text for the node.
+     */
+    NONE,
+
+    /**
+     * Stores no text for the node, but the position of every node in its source file, from which the text can be
+     * read on demand.
+     */
+    OFFSETS
+}
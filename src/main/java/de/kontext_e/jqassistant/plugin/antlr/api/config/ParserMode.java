@@ -0,0 +1,14 @@
+package de.kontext_e.jqassistant.plugin.antlr.api.config;
+
+public enum ParserMode {
+
+    /**
+     * Generates the java sources of lexer and parser, compiles and loads them.
+     */
+    COMPILED,
+
+    /**
+     * Interprets the grammar directly, without code generation and compilation.
+     */
+    INTERPRETER
+}
@@ -4,6 +4,7 @@ import io.smallrye.config.ConfigMapping;
 import io.smallrye.config.WithDefault;
 
 import java.util.List;
+import java.util.Optional;
 
 @ConfigMapping(prefix = "jqassistant.plugin.antlr", namingStrategy = ConfigMapping.NamingStrategy.VERBATIM)
 public interface PluginConfig {
@@ -16,4 +17,47 @@ public interface PluginConfig {
     @WithDefault("false")
     boolean deleteLexerAndParserAfterScan();
 
+    @WithDefault("false")
+    boolean compileInMemory();
+
+    @WithDefault("false")
+    boolean incremental();
+
+    Optional<String> parserCacheDirectory();
+
+    @WithDefault("full")
+    NodeTextMode ruleNodeText();
+
+    @WithDefault("256")
+    int ruleNodeTextMaxLength();
+
+    @WithDefault("descriptor")
+    WriterMode writerMode();
+
+    @WithDefault("10000")
+    int bulkChunkSize();
+
+    @WithDefault("1")
+    int parallelism();
+
+    @WithDefault("16")
+    int queueDepth();
+
+    Optional<String> metricsFile();
+
+    @WithDefault("10")
+    int metricsSlowestFiles();
+
+    @WithDefault("false")
+    boolean internTokens();
+
+    @WithDefault("10000")
+    int tokenCacheSize();
+
+    @WithDefault("false")
+    boolean warmUp();
+
+    @WithDefault("0")
+    int warmUpThreads();
+
 }
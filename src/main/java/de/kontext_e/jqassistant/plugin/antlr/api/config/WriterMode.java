@@ -0,0 +1,14 @@
+package de.kontext_e.jqassistant.plugin.antlr.api.config;
+
+public enum WriterMode {
+
+    /**
+     * Creates every node through the jQAssistant store, one descriptor at a time.
+     */
+    DESCRIPTOR,
+
+    /**
+     * Creates nodes and their HAS_CHILD relations in chunked UNWIND statements.
+     */
+    BULK
+}
@@ -1,6 +1,7 @@
 package de.kontext_e.jqassistant.plugin.antlr.api.model;
 
 import com.buschmais.xo.neo4j.api.annotation.Label;
+import com.buschmais.xo.neo4j.api.annotation.Relation;
 
 @Label("Node")
 @SuppressWarnings("unused")
@@ -9,4 +10,20 @@ public interface NodeDescriptor extends AntlrDescriptor {
     String getText();
     void setText(String text);
 
+    Integer getStartOffset();
+    void setStartOffset(Integer startOffset);
+
+    Integer getEndOffset();
+    void setEndOffset(Integer endOffset);
+
+    Integer getLine();
+    void setLine(Integer line);
+
+    Integer getColumn();
+    void setColumn(Integer column);
+
+    @Relation("OF_TOKEN")
+    TokenDescriptor getToken();
+    void setToken(TokenDescriptor token);
+
 }
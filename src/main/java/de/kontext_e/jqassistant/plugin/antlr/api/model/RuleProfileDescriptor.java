@@ -0,0 +1,40 @@
+package de.kontext_e.jqassistant.plugin.antlr.api.model;
+
+import com.buschmais.xo.neo4j.api.annotation.Label;
+
+/**
+ * The prediction statistics of all decisions of one grammar rule while parsing a file, recorded if profiling is
+ * enabled for the grammar.
+ */
+@Label("RuleProfile")
+@SuppressWarnings("unused")
+public interface RuleProfileDescriptor extends AntlrDescriptor {
+
+    String getRule();
+    void setRule(String rule);
+
+    Long getInvocations();
+    void setInvocations(Long invocations);
+
+    Long getPredictionTime();
+    void setPredictionTime(Long predictionTime);
+
+    Long getSllLookahead();
+    void setSllLookahead(Long sllLookahead);
+
+    Long getLlLookahead();
+    void setLlLookahead(Long llLookahead);
+
+    Long getLlFallbacks();
+    void setLlFallbacks(Long llFallbacks);
+
+    Long getAmbiguities();
+    void setAmbiguities(Long ambiguities);
+
+    Long getContextSensitivities();
+    void setContextSensitivities(Long contextSensitivities);
+
+    Long getErrors();
+    void setErrors(Long errors);
+
+}
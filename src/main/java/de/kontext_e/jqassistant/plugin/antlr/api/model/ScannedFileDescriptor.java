@@ -2,8 +2,61 @@ package de.kontext_e.jqassistant.plugin.antlr.api.model;
 
 import com.buschmais.jqassistant.plugin.common.api.model.FileDescriptor;
 import com.buschmais.xo.neo4j.api.annotation.Label;
+import com.buschmais.xo.neo4j.api.annotation.Relation;
+
+import java.util.List;
 
 @SuppressWarnings("unused")
 @Label("ScannedFile")
 public interface ScannedFileDescriptor extends AntlrDescriptor, FileDescriptor {
+
+    String getContentHash();
+    void setContentHash(String contentHash);
+
+    String getGrammarFingerprint();
+    void setGrammarFingerprint(String grammarFingerprint);
+
+    String getText();
+    void setText(String text);
+
+    Integer getStartOffset();
+    void setStartOffset(Integer startOffset);
+
+    Integer getEndOffset();
+    void setEndOffset(Integer endOffset);
+
+    Integer getLine();
+    void setLine(Integer line);
+
+    Integer getColumn();
+    void setColumn(Integer column);
+
+    String getSourcePath();
+    void setSourcePath(String sourcePath);
+
+    Long getTokenCount();
+    void setTokenCount(Long tokenCount);
+
+    Long getNodeCount();
+    void setNodeCount(Long nodeCount);
+
+    Integer getMaxDepth();
+    void setMaxDepth(Integer maxDepth);
+
+    Long getParseTime();
+    void setParseTime(Long parseTime);
+
+    Long getLlFallbacks();
+    void setLlFallbacks(Long llFallbacks);
+
+    Long getAmbiguities();
+    void setAmbiguities(Long ambiguities);
+
+    Long getDfaStates();
+    void setDfaStates(Long dfaStates);
+
+    @Relation("HAS_RULE_PROFILE")
+    List<RuleProfileDescriptor> getRuleProfiles();
+    void setRuleProfiles(List<RuleProfileDescriptor> ruleProfiles);
+
 }
@@ -0,0 +1,24 @@
+package de.kontext_e.jqassistant.plugin.antlr.api.model;
+
+import com.buschmais.xo.neo4j.api.annotation.Indexed;
+import com.buschmais.xo.neo4j.api.annotation.Label;
+
+/**
+ * A distinct token of a grammar, i.e. its type and text, shared by all terminal nodes of that token if tokens are
+ * interned.
+ */
+@Label("Token")
+@SuppressWarnings("unused")
+public interface TokenDescriptor extends AntlrDescriptor {
+
+    String getGrammar();
+    void setGrammar(String grammar);
+
+    String getType();
+    void setType(String type);
+
+    @Indexed
+    String getText();
+    void setText(String text);
+
+}
@@ -6,10 +6,12 @@ import com.buschmais.jqassistant.core.store.api.Store;
 import com.buschmais.jqassistant.plugin.common.api.model.FileDescriptor;
 import com.buschmais.jqassistant.plugin.common.api.scanner.AbstractScannerPlugin;
 import com.buschmais.jqassistant.plugin.common.api.scanner.filesystem.FileResource;
+import com.buschmais.xo.api.Query;
 import de.kontext_e.jqassistant.plugin.antlr.api.config.GrammarConfiguration;
+import de.kontext_e.jqassistant.plugin.antlr.api.config.NodeTextMode;
+import de.kontext_e.jqassistant.plugin.antlr.api.config.ParserMode;
 import de.kontext_e.jqassistant.plugin.antlr.api.model.GrammarFileDescriptor;
 import de.kontext_e.jqassistant.plugin.antlr.api.model.ScannedFileDescriptor;
-import org.antlr.v4.runtime.tree.ParseTree;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -18,9 +20,11 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import static de.kontext_e.jqassistant.plugin.antlr.impl.Utils.capitalizeFirstLetter;
 import static de.kontext_e.jqassistant.plugin.antlr.impl.Utils.getFileExtension;
@@ -30,15 +34,31 @@ public class AntlrScannerPlugin extends AbstractScannerPlugin<FileResource, Gram
     private static final Logger LOGGER = LoggerFactory.getLogger(AntlrScannerPlugin.class);
 
     private static final String PLUGIN_CONFIG_PREFIX = "jqassistant.plugin.antlr.configLocation";
+    private static final String DELETE_PARSE_TREE_QUERY =
+            "MATCH (file)-[:HAS_CHILD*]->(node:Antlr:Node) WHERE id(file) = $id DETACH DELETE node";
+    private static final String DELETE_RULE_PROFILES_QUERY =
+            "MATCH (file)-[:HAS_RULE_PROFILE]->(profile:Antlr:RuleProfile) WHERE id(file) = $id DETACH DELETE profile";
+    private static final String DELETE_SCANNED_FILE_QUERY = "MATCH (file:Antlr:ScannedFile) WHERE id(file) = $id DETACH DELETE file";
+    private static final String CREATE_SCANNED_FILE_QUERY = "CREATE (file:Antlr:File:ScannedFile:%s) RETURN file";
 
     private ConfigurationProvider configurationProvider;
-    private AntlrTool antlrTool;
     private Store store;
     private ParseTreeSaver parseTreeSaver;
     private File configFile;
+    private final Map<String, AntlrTool> antlrTools = new HashMap<>();
+    private final Map<String, ParserRuntime> parserRuntimes = new HashMap<>();
+    private Path temporaryDirectory;
+    private Thread temporaryDirectoryCleanup;
+    private ParsingPipeline parsingPipeline;
+    private final Map<String, FileLocationFilter> fileLocationFilters = new HashMap<>();
+    private final Map<String, TreePruning> treePrunings = new HashMap<>();
+    private Path lastDirectory;
+    private Path lastRealDirectory;
+    private ScanMetrics scanMetrics;
 
     @Override
     protected void configure(){
+        releaseGrammars();
         String configLocation = getProperty(PLUGIN_CONFIG_PREFIX, String.class);
         configFile = new File(configLocation);
         configurationProvider = new ConfigurationProvider();
@@ -47,9 +67,137 @@ public class AntlrScannerPlugin extends AbstractScannerPlugin<FileResource, Gram
         } catch (IOException e) {
             LOGGER.error("Could not read configuration file: {}", configFile, e);
         }
+        Path configDirectory = configFile.getAbsoluteFile().getParentFile().toPath();
+        for (GrammarConfiguration grammarConfiguration : configurationProvider.getGrammarConfigurations()) {
+            fileLocationFilters.put(grammarConfiguration.getFileExtension(), new FileLocationFilter(grammarConfiguration, configDirectory));
+            treePrunings.put(grammarConfiguration.getFileExtension(), TreePruning.of(grammarConfiguration));
+        }
+        scanMetrics = new ScanMetrics(configurationProvider.getMetricsSlowestFiles());
+        if (configurationProvider.getWarmUp()) {
+            warmUpGrammars();
+        }
+        if (configurationProvider.getParallelism() > 1) {
+            parsingPipeline = new ParsingPipeline(configurationProvider.getParallelism(), configurationProvider.getQueueDepth());
+        }
         super.configure();
     }
 
+    /**
+     * Prepares the lexers and parsers of all grammars not configured to be lazy before any file is scanned, so a
+     * broken grammar fails the configuration instead of being logged for every file it should have parsed. Lazy
+     * grammars are still prepared once the first of their files is scanned.
+     */
+    private void warmUpGrammars() {
+        File generatedFilesDirectory;
+        try {
+            generatedFilesDirectory = getGeneratedFilesDirectory();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not create directory for generated lexers and parsers", e);
+        }
+
+        GrammarWarmUp warmUp = new GrammarWarmUp(configurationProvider.getWarmUpThreads(), AntlrScannerPlugin::closeParserRuntime);
+        for (GrammarConfiguration grammarConfiguration : configurationProvider.getGrammarConfigurations()) {
+            if (grammarConfiguration.getLazy()) continue;
+
+            AntlrTool antlrTool = new AntlrTool(grammarConfiguration, configFile, generatedFilesDirectory);
+            antlrTools.put(grammarConfiguration.getFileExtension(), antlrTool);
+            warmUp.prepare(grammarConfiguration, () -> prepareParserRuntime(antlrTool, grammarConfiguration));
+        }
+        long start = System.nanoTime();
+        warmUp.awaitAll((grammarConfiguration, parserRuntime) ->
+                parserRuntimes.put(grammarConfiguration.getFileExtension(), parserRuntime));
+        LOGGER.info("Prepared {} grammars in {} ms", parserRuntimes.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    @Override
+    public void destroy() {
+        releaseGrammars();
+        super.destroy();
+    }
+
+    private void releaseGrammars() {
+        writePendingTrees();
+        reportScanMetrics();
+        if (parsingPipeline != null) {
+            parsingPipeline.close();
+            parsingPipeline = null;
+        }
+        fileLocationFilters.clear();
+        treePrunings.clear();
+        lastDirectory = null;
+        lastRealDirectory = null;
+        parserRuntimes.values().forEach(AntlrScannerPlugin::closeParserRuntime);
+        parserRuntimes.clear();
+        antlrTools.clear();
+        parseTreeSaver = null;
+        deleteTemporaryDirectory();
+    }
+
+    /**
+     * The plugin is not told when a scan is finished, so the trees of the last files parsed on the worker threads are
+     * written once it is released.
+     */
+    private void writePendingTrees() {
+        if (parsingPipeline == null || store == null) return;
+
+        boolean ownTransaction = !store.hasActiveTransaction();
+        if (ownTransaction) {
+            store.beginTransaction();
+        }
+        try {
+            parsingPipeline.writeAll();
+        } catch (RuntimeException e) {
+            LOGGER.error("Could not write the parse trees of the last scanned files", e);
+        } finally {
+            if (ownTransaction) {
+                store.commitTransaction();
+            }
+        }
+    }
+
+    private void reportScanMetrics() {
+        if (scanMetrics == null) return;
+        if (scanMetrics.hasFiles()) {
+            scanMetrics.log();
+            if (configurationProvider.getMetricsFile() != null) {
+                scanMetrics.write(configurationProvider.getMetricsFile());
+            }
+        }
+        scanMetrics = null;
+    }
+
+    /**
+     * Lexer and parser that are to be deleted after the scan are generated into a temporary directory. Their files
+     * are deleted as soon as they are loaded, the directory itself once the plugin is released, or at the latest when
+     * the JVM shuts down. Otherwise they are generated into
+     * the configured parser cache, or next to the grammar file if there is none.
+     */
+    private File getGeneratedFilesDirectory() throws IOException {
+        if (!configurationProvider.getDeleteParserAndLexerAfterScan()) return configurationProvider.getParserCacheDirectory();
+
+        if (temporaryDirectory == null) {
+            temporaryDirectory = Files.createTempDirectory("jqassistant-antlr");
+            String directoryToDelete = temporaryDirectory.toString();
+            temporaryDirectoryCleanup = new Thread(() -> deleteGeneratedFiles(directoryToDelete));
+            Runtime.getRuntime().addShutdownHook(temporaryDirectoryCleanup);
+        }
+        return temporaryDirectory.toFile();
+    }
+
+    private void deleteTemporaryDirectory() {
+        if (temporaryDirectory == null) return;
+
+        try {
+            Runtime.getRuntime().removeShutdownHook(temporaryDirectoryCleanup);
+        } catch (IllegalStateException e) {
+            // the JVM is already shutting down and the hook takes care of the deletion
+            return;
+        }
+        deleteGeneratedFiles(temporaryDirectory.toString());
+        temporaryDirectory = null;
+        temporaryDirectoryCleanup = null;
+    }
+
     @Override
     public boolean accepts(FileResource fileResource, String s, Scope scope) throws IOException {
         String fileExtension = getFileExtension(fileResource.getFile());
@@ -58,92 +206,318 @@ public class AntlrScannerPlugin extends AbstractScannerPlugin<FileResource, Gram
         boolean hasConfiguredFileExtension = configurationProvider.isConfiguredFileExtension(fileExtension);
         if (!hasConfiguredFileExtension) return false;
 
-        GrammarConfiguration config = configurationProvider.getGrammarConfigurationFor(fileExtension);
+        return isInConfiguredLocations(path, configurationProvider.getGrammarConfigurationFor(fileExtension));
+    }
 
-        Path configFilePath = configFile.getParentFile().toPath().toAbsolutePath();
-        boolean isIncluded = config.getIncludedFileLocations().stream()
-                .map(Paths::get)
-                .map(configFilePath::resolve)
-                .map(Path::normalize)
-                .anyMatch(location -> isSubPath(path, location));
-        if (isIncluded) return true;
+    private boolean isInConfiguredLocations(Path path, GrammarConfiguration config) {
+        FileLocationFilter fileLocationFilter = fileLocationFilters.get(config.getFileExtension());
+        if (!fileLocationFilter.hasLocations()) return true;
 
-        return config.getExcludedFileLocations().stream()
-                .map(Paths::get)
-                .map(configFilePath::resolve)
-                .map(Path::normalize).
-                noneMatch(location -> isSubPath(path, location));
+        return fileLocationFilter.accepts(toRealPath(path));
     }
 
-    private static boolean isSubPath(Path child, Path parent) {
-        try {
-            Path parentPath = parent.toRealPath();
-            Path childPath = child.toRealPath();
-            return childPath.startsWith(parentPath);
-        } catch (IOException e) {
-            LOGGER.error("Could not parse path: {}, try using absolute paths", child, e);
-            return false;
+    /**
+     * The scanner offers the files of a directory one after another, so the real path of the directory is only
+     * resolved once for all of them.
+     */
+    private Path toRealPath(Path path) {
+        Path absolutePath = path.toAbsolutePath().normalize();
+        Path directory = absolutePath.getParent();
+        if (directory == null) return absolutePath;
+
+        if (!directory.equals(lastDirectory)) {
+            try {
+                lastRealDirectory = directory.toRealPath();
+            } catch (IOException e) {
+                LOGGER.error("Could not parse path: {}, try using absolute paths", path, e);
+                lastRealDirectory = directory;
+            }
+            lastDirectory = directory;
         }
+        return lastRealDirectory.resolve(absolutePath.getFileName());
     }
 
     @Override
     public GrammarFileDescriptor scan(FileResource fileResource, String path, Scope scope, Scanner scanner) throws IOException {
         File file = fileResource.getFile();
-        GrammarConfiguration grammarConfiguration = configurationProvider.getGrammarConfigurationFor(getFileExtension(file));
-
-        store = scanner.getContext().getStore();
-        parseTreeSaver = new ParseTreeSaver(store, configurationProvider.getCreateEmptyNodes());
-        antlrTool = new AntlrTool(grammarConfiguration, configFile);
+        String fileExtension = getFileExtension(file);
+        GrammarConfiguration grammarConfiguration = configurationProvider.getGrammarConfigurationFor(fileExtension);
 
-        String lexerAndParserLocation = antlrTool.getLexerAndParser();
-        ScannedFileDescriptor scannedFile = parseFilesAndStoreTrees(file, lexerAndParserLocation);
-        String grammarRoot = grammarConfiguration.getGrammarRoot();
-        addGrammarRootNameToScannedFiles(scannedFile, grammarRoot);
-
-        if (configurationProvider.getDeleteParserAndLexerAfterScan()) {
-            deleteGeneratedFiles(lexerAndParserLocation);
+        Store currentStore = scanner.getContext().getStore();
+        if (parseTreeSaver == null || store != currentStore) {
+            // the trees still waiting to be written belong to the previous store
+            writePendingTrees();
+            store = currentStore;
+            parseTreeSaver = new ParseTreeSaver(store, configurationProvider);
+        }
+        AntlrTool antlrTool = antlrTools.get(fileExtension);
+        if (antlrTool == null) {
+            antlrTool = new AntlrTool(grammarConfiguration, configFile, getGeneratedFilesDirectory());
+            antlrTools.put(fileExtension, antlrTool);
         }
 
         FileDescriptor fileDescriptor = scanner.getContext().getCurrentDescriptor();
+        ScannedFileDescriptor previousScannedFile = configurationProvider.getIncremental() ? findPreviousScannedFile(fileDescriptor) : null;
+        long deletionNanos = 0;
+        String contentHash = null;
+        String treeFingerprint = null;
+        if (configurationProvider.getIncremental()) {
+            contentHash = Utils.hashContent(file.toPath());
+            treeFingerprint = antlrTool.getTreeFingerprint(getTreeSettings(grammarConfiguration));
+            if (previousScannedFile != null && contentHash.equals(previousScannedFile.getContentHash())
+                    && treeFingerprint.equals(previousScannedFile.getGrammarFingerprint())) {
+                skipUnchangedFile(file);
+                return (GrammarFileDescriptor) fileDescriptor;
+            }
+            if (previousScannedFile != null) {
+                long deletionStart = System.nanoTime();
+                deleteScannedFile(previousScannedFile);
+                deletionNanos = System.nanoTime() - deletionStart;
+            }
+        }
+        // a changed grammar root changes the label, so the scanned file of a previous scan is never reused
+        ScannedFileDescriptor scannedFile = createScannedFile(grammarConfiguration.getGrammarRoot());
+
+        // the text of the nodes is read from the source file, so it has to be found again
+        boolean storesOffsets = configurationProvider.getRuleNodeTextMode() == NodeTextMode.OFFSETS;
+        scannedFile.setSourcePath(storesOffsets ? file.getAbsolutePath() : null);
+        ParseTreeSaver saver = parseTreeSaver;
+        long previousTreeDeletionNanos = deletionNanos;
+        String scannedContentHash = contentHash;
+        String scannedTreeFingerprint = treeFingerprint;
+        parseFileAndStoreTree(scannedFile, file, antlrTool, grammarConfiguration, fileMetrics -> {
+            fileMetrics.addTime(ScanMetrics.Phase.DELETION, previousTreeDeletionNanos);
+            saver.saveParseStatistics(scannedFile, fileMetrics);
+            // only a file whose tree has been written is skipped by the next incremental scan
+            if (configurationProvider.getIncremental()) {
+                scannedFile.setContentHash(scannedContentHash);
+                scannedFile.setGrammarFingerprint(scannedTreeFingerprint);
+            }
+            scanMetrics.complete(fileMetrics);
+        });
+
         GrammarFileDescriptor antlrGrammarDescriptor = store.addDescriptorType(fileDescriptor, GrammarFileDescriptor.class);
         antlrGrammarDescriptor.getScannedFiles().add(scannedFile);
         return antlrGrammarDescriptor;
     }
 
-    private void addGrammarRootNameToScannedFiles(ScannedFileDescriptor scannedFile, String grammarRoot) {
-        String queryTemplate = "MATCH (n) WHERE id(n) = %s SET n:%s";
-        String query = String.format(queryTemplate, scannedFile.getId(), capitalizeFirstLetter(grammarRoot));
-        store.executeQuery(query).close();
+    private static ScannedFileDescriptor findPreviousScannedFile(FileDescriptor fileDescriptor) {
+        if (!(fileDescriptor instanceof GrammarFileDescriptor)) return null;
+
+        List<ScannedFileDescriptor> scannedFiles = ((GrammarFileDescriptor) fileDescriptor).getScannedFiles();
+        return scannedFiles.isEmpty() ? null : scannedFiles.get(0);
+    }
+
+    /**
+     * The options that determine the parse trees stored for a grammar, so that changing any of them causes the files
+     * of the grammar to be parsed again by an incremental scan.
+     */
+    private List<String> getTreeSettings(GrammarConfiguration grammarConfiguration) {
+        return List.of(
+                "grammarRoot=" + grammarConfiguration.getGrammarRoot(),
+                "mode=" + grammarConfiguration.getMode(),
+                "createEmptyNodes=" + configurationProvider.getCreateEmptyNodes(),
+                "ruleNodeText=" + configurationProvider.getRuleNodeTextMode(),
+                "ruleNodeTextMaxLength=" + configurationProvider.getRuleNodeTextMaxLength(),
+                "internTokens=" + configurationProvider.getInternTokens(),
+                "profiling=" + grammarConfiguration.getProfiling(),
+                "excludedRules=" + grammarConfiguration.getExcludedRules(),
+                "excludedTokens=" + grammarConfiguration.getExcludedTokens(),
+                "leafRules=" + grammarConfiguration.getLeafRules(),
+                "collapseSingleChildRules=" + grammarConfiguration.getCollapseSingleChildRules());
     }
 
-    private ScannedFileDescriptor parseFilesAndStoreTrees(File fileToBeParsed, String lexerAndParserLocation) {
-        List<ParseTree> parseTrees = loadParserAndParseFile(lexerAndParserLocation, fileToBeParsed);
-        ScannedFileDescriptor scannedFileDescriptor = store.create(ScannedFileDescriptor.class);
-        parseTreeSaver.saveParseTreesToNeo4J(parseTrees, scannedFileDescriptor);
-        return scannedFileDescriptor;
+    private void skipUnchangedFile(File file) {
+        LOGGER.debug("Skipping unchanged file: {}", file);
     }
 
-    private List<ParseTree> loadParserAndParseFile(String lexerAndParserLocation, File parsedFile) {
+    private void deleteScannedFile(ScannedFileDescriptor scannedFile) {
+        store.flush();
+        store.executeQuery(DELETE_PARSE_TREE_QUERY, Map.of("id", scannedFile.getId())).close();
+        store.executeQuery(DELETE_RULE_PROFILES_QUERY, Map.of("id", scannedFile.getId())).close();
+        store.executeQuery(DELETE_SCANNED_FILE_QUERY, Map.of("id", scannedFile.getId())).close();
+    }
+
+    /**
+     * Creates the scanned file together with the label of the grammar root, which the store could only add with a
+     * further statement once the node exists.
+     */
+    private ScannedFileDescriptor createScannedFile(String grammarRoot) {
+        //Cypher does not allow for parameterization of labels, which is why string formatting is used
+        String query = String.format(CREATE_SCANNED_FILE_QUERY, capitalizeFirstLetter(grammarRoot));
+        try (Query.Result<Query.Result.CompositeRowObject> result = store.executeQuery(query)) {
+            return result.getSingleResult().get("file", ScannedFileDescriptor.class);
+        }
+    }
+
+    /**
+     * @param completion receives the metrics of parsing the file and storing its tree once the tree has been written,
+     *                   which may be during the scan of a later file if the file is parsed on a worker thread
+     */
+    private void parseFileAndStoreTree(ScannedFileDescriptor scannedFileDescriptor, File fileToBeParsed, AntlrTool antlrTool,
+                                       GrammarConfiguration grammarConfiguration, Consumer<FileMetrics> completion) {
+        if (grammarConfiguration.getStreaming()) {
+            completion.accept(parseFileStreamingAndStoreTree(scannedFileDescriptor, fileToBeParsed, antlrTool, grammarConfiguration));
+            return;
+        }
+
+        ParserRuntime parserRuntime = loadParserRuntimeOrLogError(antlrTool, grammarConfiguration);
+        ParseTreeSaver saver = parseTreeSaver;
+        String grammarName = grammarConfiguration.getGrammarName();
+        TreePruning pruning = getTreePruning(grammarConfiguration);
+        Supplier<ParsedFile> parsing = () -> parseAndFlatten(saver, antlrTool, parserRuntime, fileToBeParsed, grammarName, pruning);
+        Consumer<ParsedFile> writing = parsedFile -> {
+            saver.saveParseTreesToNeo4J(parsedFile.getParseTree(), scannedFileDescriptor, parsedFile.getMetrics());
+            completion.accept(parsedFile.getMetrics());
+        };
+        if (parsingPipeline == null || parserRuntime == null) {
+            writing.accept(parsing.get());
+            return;
+        }
+
+        // the store is only ever touched on this thread, the workers just parse and flatten the files
+        parsingPipeline.submit(parsing, writing);
+        parsingPipeline.writeParsedFiles();
+    }
+
+    /**
+     * Writes every child of the grammar root as soon as it has been parsed, so neither the file nor its parse tree is
+     * kept in memory as a whole. Such files are never parsed on worker threads, as that would keep their trees in
+     * memory again.
+     */
+    private FileMetrics parseFileStreamingAndStoreTree(ScannedFileDescriptor scannedFileDescriptor, File fileToBeParsed, AntlrTool antlrTool,
+                                                       GrammarConfiguration grammarConfiguration) {
+        FileMetrics fileMetrics = new FileMetrics(fileToBeParsed.getPath(), grammarConfiguration.getGrammarName());
+        ParserRuntime parserRuntime = loadParserRuntimeOrLogError(antlrTool, grammarConfiguration);
+        if (parserRuntime == null) return fileMetrics;
+
+        fileMetrics.addBytes(fileToBeParsed.length());
+        long start = System.nanoTime();
+        try (ParseTreeSaver.TreeStream treeStream = parseTreeSaver.openTreeStream(scannedFileDescriptor,
+                getTreePruning(grammarConfiguration), fileMetrics)) {
+            ParseResult parseResult = antlrTool.parseFileStreaming(parserRuntime, fileToBeParsed, treeStream);
+            fileMetrics.addTokens(parseResult.getTokenCount());
+            fileMetrics.setProfile(parseResult.getProfile());
+        } catch (IOException e) {
+            LOGGER.error("There has been an error generating the parser or reading the File to be parsed: {}", e.getMessage());
+        } catch (Exception e) {
+            LOGGER.error("There has been an error while loading and executing the parser and lexer: {}", (Object[]) e.getStackTrace());
+        }
+        // the trees are flattened and written while the file is read, the rest of the time is spent lexing and parsing
+        fileMetrics.addTime(ScanMetrics.Phase.PARSING, System.nanoTime() - start - fileMetrics.getTotalTime());
+        return fileMetrics;
+    }
+
+    private TreePruning getTreePruning(GrammarConfiguration grammarConfiguration) {
+        return treePrunings.getOrDefault(grammarConfiguration.getFileExtension(), TreePruning.NONE);
+    }
+
+    private static ParsedFile parseAndFlatten(ParseTreeSaver saver, AntlrTool antlrTool, ParserRuntime parserRuntime,
+                                              File parsedFile, String grammarName, TreePruning pruning) {
+        FileMetrics fileMetrics = new FileMetrics(parsedFile.getPath(), grammarName);
+        ParseResult parseResult = parseFile(antlrTool, parserRuntime, parsedFile);
+        fileMetrics.addBytes(parsedFile.length());
+        fileMetrics.addTokens(parseResult.getTokenCount());
+        fileMetrics.addTime(ScanMetrics.Phase.LEXING, parseResult.getLexingNanos());
+        fileMetrics.addTime(ScanMetrics.Phase.PARSING, parseResult.getParsingNanos());
+        fileMetrics.setProfile(parseResult.getProfile());
+        if (parseResult.isTwoStageFallback()) {
+            fileMetrics.countTwoStageFallback();
+        }
+        return new ParsedFile(saver.flatten(parseResult, pruning, fileMetrics), fileMetrics);
+    }
+
+    private ParserRuntime loadParserRuntimeOrLogError(AntlrTool antlrTool, GrammarConfiguration grammarConfiguration) {
         try {
-            return antlrTool.loadParserAndParseFile(lexerAndParserLocation, parsedFile);
+            return getParserRuntime(antlrTool, grammarConfiguration);
         } catch (IOException e) {
-            LOGGER.error("There has been an error reading the File to be parsed: {}", e.getMessage());
+            LOGGER.error("There has been an error generating the parser or reading the File to be parsed: {}", e.getMessage());
         } catch (NoSuchMethodException e) {
             LOGGER.error("Method to get parse tree root not found in parser. Does the configured grammar root match the actual grammar root? {}", e.getMessage());
         } catch (Exception e) {
             LOGGER.error("There has been an error while loading and executing the parser and lexer: {}", (Object[]) e.getStackTrace());
         }
-        return new ArrayList<>();
+        return null;
     }
 
-    @SuppressWarnings("ResultOfMethodCallIgnored")
-    void deleteGeneratedFiles(String lexerAndParserLocation) {
-        try (var dirStream = Files.walk(Paths.get(lexerAndParserLocation))) {
-            dirStream.map(Path::toFile)
-                    .sorted(Comparator.reverseOrder())
-                    .forEach(File::delete);
+    private static ParseResult parseFile(AntlrTool antlrTool, ParserRuntime parserRuntime, File parsedFile) {
+        if (parserRuntime == null) return ParseResult.empty();
+        try {
+            return antlrTool.loadParserAndParseFile(parserRuntime, parsedFile);
+        } catch (IOException e) {
+            LOGGER.error("There has been an error generating the parser or reading the File to be parsed: {}", e.getMessage());
+        } catch (Exception e) {
+            LOGGER.error("There has been an error while loading and executing the parser and lexer: {}", (Object[]) e.getStackTrace());
+        }
+        return ParseResult.empty();
+    }
+
+    private ParserRuntime getParserRuntime(AntlrTool antlrTool, GrammarConfiguration grammarConfiguration)
+            throws ClassNotFoundException, IOException, IllegalAccessException, NoSuchMethodException {
+        String fileExtension = grammarConfiguration.getFileExtension();
+        ParserRuntime parserRuntime = parserRuntimes.get(fileExtension);
+        if (parserRuntime == null) {
+            parserRuntime = prepareParserRuntime(antlrTool, grammarConfiguration);
+            parserRuntimes.put(fileExtension, parserRuntime);
+        }
+        return parserRuntime;
+    }
+
+    /**
+     * Loads the parser runtime and records the time spent on it, which may happen on a thread warming up grammars.
+     */
+    private ParserRuntime prepareParserRuntime(AntlrTool antlrTool, GrammarConfiguration grammarConfiguration)
+            throws ClassNotFoundException, IOException, IllegalAccessException, NoSuchMethodException {
+        long generationNanos = antlrTool.getGenerationNanos();
+        long compilationNanos = antlrTool.getCompilationNanos();
+        long start = System.nanoTime();
+        ParserRuntime parserRuntime = loadParserRuntime(antlrTool, grammarConfiguration);
+
+        generationNanos = antlrTool.getGenerationNanos() - generationNanos;
+        compilationNanos = antlrTool.getCompilationNanos() - compilationNanos;
+        long loadingNanos = System.nanoTime() - start - generationNanos - compilationNanos;
+        String grammarName = grammarConfiguration.getGrammarName();
+        scanMetrics.addGrammarTime(grammarName, ScanMetrics.Phase.GENERATION, generationNanos);
+        scanMetrics.addGrammarTime(grammarName, ScanMetrics.Phase.COMPILATION, compilationNanos);
+        scanMetrics.addGrammarTime(grammarName, ScanMetrics.Phase.LOADING, loadingNanos);
+        return parserRuntime;
+    }
+
+    private ParserRuntime loadParserRuntime(AntlrTool antlrTool, GrammarConfiguration grammarConfiguration)
+            throws ClassNotFoundException, IOException, IllegalAccessException, NoSuchMethodException {
+        if (grammarConfiguration.parserJar().isPresent()) {
+            return antlrTool.loadPackagedParserRuntime();
+        }
+        if (grammarConfiguration.getMode() == ParserMode.INTERPRETER) {
+            return antlrTool.loadInterpretedParserRuntime();
+        }
+        if (configurationProvider.getCompileInMemory()) {
+            return antlrTool.loadParserRuntimeInMemory();
+        }
+        if (configurationProvider.getDeleteParserAndLexerAfterScan()) {
+            // the plugin is not told when the scan is finished, so the files are deleted as soon as they are loaded
+            String lexerAndParser = antlrTool.getLexerAndParser();
+            ParserRuntime parserRuntime = antlrTool.loadParserRuntimeIntoMemory(lexerAndParser);
+            deleteGeneratedFiles(lexerAndParser);
+            return parserRuntime;
+        }
+        return antlrTool.loadParserRuntime(antlrTool.getLexerAndParser());
+    }
+
+    private static void closeParserRuntime(ParserRuntime parserRuntime) {
+        if (parserRuntime == null) return;
+        try {
+            parserRuntime.close();
+        } catch (IOException e) {
+            LOGGER.warn("Could not close class loader of generated lexer and parser", e);
+        }
+    }
+
+    void deleteGeneratedFiles(String generatedFilesLocation) {
+        try {
+            Utils.deleteRecursively(Paths.get(generatedFilesLocation));
         } catch (IOException e) {
-            LOGGER.warn("Could not delete generated files in: {}", lexerAndParserLocation);
+            LOGGER.warn("Could not delete generated files in: {}", generatedFilesLocation);
         }
     }
 }
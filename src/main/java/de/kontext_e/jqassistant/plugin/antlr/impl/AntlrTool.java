@@ -3,9 +3,7 @@ package de.kontext_e.jqassistant.plugin.antlr.impl;
 import de.kontext_e.jqassistant.plugin.antlr.api.config.GrammarConfiguration;
 import org.antlr.v4.Tool;
 import org.antlr.v4.runtime.CharStreams;
-import org.antlr.v4.runtime.CommonTokenStream;
-import org.antlr.v4.runtime.TokenSource;
-import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.UnbufferedCharStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -15,62 +13,192 @@ import javax.tools.StandardJavaFileManager;
 import javax.tools.ToolProvider;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringWriter;
-import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.net.URI;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-import static de.kontext_e.jqassistant.plugin.antlr.impl.Utils.capitalizeFirstLetter;
-
 public class AntlrTool {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(AntlrTool.class);
 
+    private static final String FINGERPRINT_FILE = "grammar.fingerprint";
+    private static final int STREAMING_BUFFER_SIZE = 8192;
+    private static final Object TEMPLATES_LOCK = new Object();
+    private static volatile boolean templatesLoaded;
+
     private final String grammarName;
     private final String grammarRoot;
+    private final boolean twoStageParsing;
+    private final boolean profiling;
     private final File grammarFile;
+    private final File parserJar;
+    private final String fileExtension;
+    private final File generatedFilesDirectory;
+    private String lexerAndParserLocation;
+    private String treeFingerprint;
+    private GrammarPackager.PackagedGrammar packagedGrammar;
+    private long generationNanos;
+    private long compilationNanos;
 
     public AntlrTool(GrammarConfiguration grammarConfiguration, File configFile) {
+        this(grammarConfiguration, configFile, null);
+    }
+
+    /**
+     * @param generatedFilesDirectory the directory to generate the lexer and parser into, e.g. a cache shared by
+     *                                several projects, or null to generate them next to the grammar file
+     */
+    public AntlrTool(GrammarConfiguration grammarConfiguration, File configFile, File generatedFilesDirectory) {
         Path configPath = configFile.getParentFile().toPath().toAbsolutePath();
-        Path grammarFilePath = Path.of(grammarConfiguration.grammarFile());
-        Path absoluteGrammarFilePath = configPath.resolve(grammarFilePath).normalize();
 
-        this.grammarFile = absoluteGrammarFilePath.toFile();
+        this.grammarFile = grammarConfiguration.optionalGrammarFile()
+                .map(grammarFile -> configPath.resolve(Path.of(grammarFile)).normalize().toFile())
+                .orElse(null);
+        this.parserJar = grammarConfiguration.parserJar()
+                .map(parserJar -> configPath.resolve(Path.of(parserJar)).normalize().toFile())
+                .orElse(null);
+        this.fileExtension = grammarConfiguration.getFileExtension();
         this.grammarName = grammarConfiguration.getGrammarName();
         this.grammarRoot = grammarConfiguration.getGrammarRoot();
+        this.twoStageParsing = grammarConfiguration.getTwoStageParsing();
+        this.profiling = grammarConfiguration.getProfiling();
+        this.generatedFilesDirectory = generatedFilesDirectory;
     }
 
+    /**
+     * Generates and compiles the lexer and parser unless they have already been generated from the same grammar
+     * fingerprint. The output directory is only inspected on the first call, subsequent calls return the known location.
+     */
     public String getLexerAndParser() throws IOException {
-        String lexerAndParserLocation = grammarFile.getParentFile().getAbsolutePath() + File.separator + ".antlrPlugin" + grammarName;
-        if (!javaFilesFoundInDirectory(lexerAndParserLocation)) {
-            generateLexerAndParser(grammarFile, lexerAndParserLocation);
-        }
-        if (!classFilesFoundInDirectory(lexerAndParserLocation)) {
-            compileJavaFiles(findJavaFilesInDirectory(lexerAndParserLocation));
+        if (lexerAndParserLocation != null) return lexerAndParserLocation;
+
+        String fingerprint = GrammarFingerprint.ofLexerAndParser(grammarFile);
+        Path location = getLexerAndParserDirectory(fingerprint);
+        if (!fingerprint.equals(readFingerprint(location))) {
+            generateAndCompileLexerAndParser(location, fingerprint);
         }
+        lexerAndParserLocation = location.toString();
         return lexerAndParserLocation;
     }
 
-    private static boolean classFilesFoundInDirectory(String lexerAndParserLocation) {
-        File[] files = new File(lexerAndParserLocation).listFiles();
-        if (files == null) return false;
-        return Arrays.stream(files).anyMatch(file -> file.getName().endsWith(".class"));
+    /**
+     * @param settings the options that determine the parse trees stored for the grammar
+     * @return the fingerprint of the grammar together with the settings, which is only computed on the first call
+     */
+    public String getTreeFingerprint(List<String> settings) throws IOException {
+        if (treeFingerprint == null) {
+            treeFingerprint = parserJar != null
+                    ? GrammarFingerprint.of(getPackagedGrammar().getFingerprint(), settings)
+                    : GrammarFingerprint.of(grammarFile, settings);
+        }
+        return treeFingerprint;
     }
 
-    private static boolean javaFilesFoundInDirectory(String lexerAndParserLocation) {
-        File[] outputDirectory = new File(lexerAndParserLocation).listFiles();
-        if (outputDirectory == null) return false;
-        return Arrays.stream(outputDirectory).anyMatch(file -> file.getName().endsWith(".java"));
+    /**
+     * @return the fingerprint of the grammar file, which unlike the one the generated lexer and parser are cached by
+     * does not depend on the java version
+     */
+    String getGrammarFingerprint() throws IOException {
+        return GrammarFingerprint.of(grammarFile);
+    }
+
+    /**
+     * @return the time spent generating the lexer and parser with ANTLR so far
+     */
+    long getGenerationNanos() {
+        return generationNanos;
+    }
+
+    /**
+     * @return the time spent compiling the generated lexer and parser so far
+     */
+    long getCompilationNanos() {
+        return compilationNanos;
+    }
+
+    private Path getLexerAndParserDirectory(String fingerprint) {
+        if (generatedFilesDirectory == null) {
+            return grammarFile.getParentFile().toPath().resolve(".antlrPlugin" + grammarName);
+        }
+        // locations outside the grammar directory may be shared, so every version of a grammar gets its own directory
+        return generatedFilesDirectory.toPath().toAbsolutePath().resolve(grammarName + "-" + fingerprint);
+    }
+
+    private static String readFingerprint(Path lexerAndParserDirectory) throws IOException {
+        Path fingerprintFile = lexerAndParserDirectory.resolve(FINGERPRINT_FILE);
+        if (!Files.isRegularFile(fingerprintFile)) return null;
+        return Files.readString(fingerprintFile).trim();
+    }
+
+    /**
+     * Generates into a staging directory that is moved into place once complete, so that concurrent scans sharing the
+     * location never see a partially generated or partially deleted lexer and parser. The fingerprint is only written if the compilation
+     * succeeded, otherwise the next scan tries again.
+     */
+    private void generateAndCompileLexerAndParser(Path location, String fingerprint) throws IOException {
+        Files.createDirectories(location.getParent());
+        Path stagingDirectory = Files.createTempDirectory(location.getParent(), location.getFileName() + ".");
+
+        long generationStart = System.nanoTime();
+        generateLexerAndParser(grammarFile, stagingDirectory.toString());
+        long compilationStart = System.nanoTime();
+        generationNanos += compilationStart - generationStart;
+        boolean compiled = compileJavaFiles(findJavaFilesInDirectory(stagingDirectory.toString()));
+        compilationNanos += System.nanoTime() - compilationStart;
+        if (compiled) {
+            Files.writeString(stagingDirectory.resolve(FINGERPRINT_FILE), fingerprint);
+        }
+
+        Path replacedDirectory;
+        try {
+            replacedDirectory = moveAside(location, stagingDirectory);
+        } catch (IOException e) {
+            Utils.deleteRecursively(stagingDirectory);
+            throw e;
+        }
+        try {
+            Files.move(stagingDirectory, location, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Utils.deleteRecursively(stagingDirectory);
+            if (!fingerprint.equals(readFingerprint(location))) throw e;
+            LOGGER.debug("Lexer and parser in {} have been generated concurrently", location);
+        } finally {
+            if (replacedDirectory != null) {
+                Utils.deleteRecursively(replacedDirectory);
+            }
+        }
+    }
+
+    /**
+     * Renames the outdated lexer and parser instead of deleting them in place, so the location is either complete or
+     * missing, but never partially deleted. They are only deleted once the new ones have been moved into place.
+     *
+     * @return the directory the outdated lexer and parser have been moved to, or null if there are none
+     */
+    private static Path moveAside(Path location, Path stagingDirectory) throws IOException {
+        Path replacedDirectory = stagingDirectory.resolveSibling(stagingDirectory.getFileName() + ".replaced");
+        try {
+            Files.move(location, replacedDirectory, StandardCopyOption.ATOMIC_MOVE);
+            return replacedDirectory;
+        } catch (NoSuchFileException e) {
+            return null;
+        }
     }
 
     private void generateLexerAndParser(File grammarFile, String outputPath) throws IOException {
@@ -83,6 +211,23 @@ public class AntlrTool {
         arguments.add(outputPath);
 
         Tool tool = new Tool(arguments.toArray(new String[0]));
+        processGrammars(tool);
+    }
+
+    /**
+     * ANTLR loads its code generation templates into a static map that is not safe for concurrent use, so grammars
+     * warmed up at the same time are only processed in parallel once the templates have been loaded by one of them.
+     */
+    static void processGrammars(Tool tool) {
+        if (!templatesLoaded) {
+            synchronized (TEMPLATES_LOCK) {
+                if (!templatesLoaded) {
+                    tool.processGrammarsOnCommandLine();
+                    templatesLoaded = tool.getNumErrors() == 0;
+                    return;
+                }
+            }
+        }
         tool.processGrammarsOnCommandLine();
     }
 
@@ -104,47 +249,110 @@ public class AntlrTool {
         return sourceFiles;
     }
 
-    private void compileJavaFiles(List<String> javaFiles) {
+    private boolean compileJavaFiles(List<String> javaFiles) {
         JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
         StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null);
         Iterable<? extends JavaFileObject> compilationUnits = fileManager.getJavaFileObjectsFromStrings(javaFiles);
-        String pluginClassPath = new ClasspathResolver().getPluginClassPath();
-        // The following line and the null is unfortunately necessary to make the tests run again, as during the tests,
-        // this class is not loaded with an url Classloader but instead with an AppClassLoader
-        List<String> options = pluginClassPath.isEmpty() ? null : Arrays.asList("-classpath", pluginClassPath);
         StringWriter compilerOutput = new StringWriter();
 
-        compiler.getTask(compilerOutput, fileManager, null, options, null, compilationUnits).call();
+        Boolean compiled = compiler.getTask(compilerOutput, fileManager, null, getCompilerOptions(), null, compilationUnits).call();
 
         if (!compilerOutput.toString().isEmpty()) {
             LOGGER.error("Compilation failed: {}", compilerOutput);
         }
+        return Boolean.TRUE.equals(compiled);
     }
 
+    static List<String> getCompilerOptions() {
+        String pluginClassPath = new ClasspathResolver().getPluginClassPath();
+        // The following line and the null is unfortunately necessary to make the tests run again, as during the tests,
+        // this class is not loaded with an url Classloader but instead with an AppClassLoader
+        return pluginClassPath.isEmpty() ? null : Arrays.asList("-classpath", pluginClassPath);
+    }
 
-    @SuppressWarnings("unchecked")
-    public List<ParseTree> loadParserAndParseFile(String lexerAndParserLocation, File file) throws ClassNotFoundException, IOException,
-            InvocationTargetException, InstantiationException, IllegalAccessException, NoSuchMethodException, NoSuchFieldException {
+    public ParserRuntime loadParserRuntime(String lexerAndParserLocation) throws ClassNotFoundException, IOException,
+            IllegalAccessException, NoSuchMethodException {
+        return loadParserRuntime(new File(lexerAndParserLocation).toURI().toURL());
+    }
 
-        URL lexerAndParserURL = new File(lexerAndParserLocation).toURI().toURL();
+    private ParserRuntime loadParserRuntime(URL lexerAndParserURL) throws ClassNotFoundException, IOException,
+            IllegalAccessException, NoSuchMethodException {
         URLClassLoader classLoader = URLClassLoader.newInstance(new URL[]{lexerAndParserURL}, getClass().getClassLoader());
+        return new CompiledParserRuntime(classLoader, grammarName, grammarRoot, twoStageParsing, profiling);
+    }
+
+    /**
+     * Reads the classes of the generated lexer and parser into memory and loads them from there, so the generated
+     * files may be deleted right away.
+     */
+    public ParserRuntime loadParserRuntimeIntoMemory(String lexerAndParserLocation) throws ClassNotFoundException,
+            IOException, IllegalAccessException, NoSuchMethodException {
+        Path lexerAndParser = Paths.get(lexerAndParserLocation);
+        Map<String, byte[]> classes = new HashMap<>();
+        try (Stream<Path> files = Files.walk(lexerAndParser)) {
+            for (Path classFile : files.filter(file -> file.toString().endsWith(".class")).collect(Collectors.toList())) {
+                String fileName = lexerAndParser.relativize(classFile).toString();
+                String className = fileName.substring(0, fileName.length() - ".class".length()).replace(File.separatorChar, '.');
+                classes.put(className, Files.readAllBytes(classFile));
+            }
+        }
+        ClassLoader classLoader = new ByteArrayClassLoader(classes, getClass().getClassLoader());
+        return new CompiledParserRuntime(classLoader, grammarName, grammarRoot, twoStageParsing, profiling);
+    }
+
+    /**
+     * Loads the lexer and parser prebuilt into the configured parser jar, so neither ANTLR nor a java compiler is used.
+     */
+    public ParserRuntime loadPackagedParserRuntime() throws ClassNotFoundException, IOException,
+            IllegalAccessException, NoSuchMethodException {
+        URL lexerAndParserURL = URI.create("jar:" + parserJar.toURI() + "!/" + getPackagedGrammar().getEntry()).toURL();
+        return loadParserRuntime(lexerAndParserURL);
+    }
 
-        Class<?> parserClass = Class.forName(grammarName + "Parser", true, classLoader);
-        Class<?> lexerClass = Class.forName(grammarName + "Lexer", true, classLoader);
+    /**
+     * @throws IOException if the parser jar does not contain the grammar
+     */
+    private GrammarPackager.PackagedGrammar getPackagedGrammar() throws IOException {
+        if (packagedGrammar == null) {
+            packagedGrammar = GrammarPackager.findGrammar(parserJar, grammarName, fileExtension);
+        }
+        return packagedGrammar;
+    }
 
-        Object lexerObject = lexerClass.getDeclaredConstructors()[0].newInstance(CharStreams.fromPath(file.toPath()));
-        CommonTokenStream tokenStream = new CommonTokenStream((TokenSource) lexerObject);
-        Object parserInstance = parserClass.getDeclaredConstructors()[0].newInstance(tokenStream);
+    /**
+     * Generates, compiles and loads lexer and parser without writing any files to disk.
+     */
+    public ParserRuntime loadParserRuntimeInMemory() throws ClassNotFoundException, IOException,
+            IllegalAccessException, NoSuchMethodException {
+        InMemoryCompiler inMemoryCompiler = new InMemoryCompiler();
+        ClassLoader classLoader = inMemoryCompiler.generateAndCompile(grammarFile);
+        generationNanos += inMemoryCompiler.getGenerationNanos();
+        compilationNanos += inMemoryCompiler.getCompilationNanos();
+        return new CompiledParserRuntime(classLoader, grammarName, grammarRoot, twoStageParsing, profiling);
+    }
 
-        Method method = parserClass.getMethod(grammarRoot);
-        Object returnValue = method.invoke(parserInstance);
+    /**
+     * Loads the grammar for interpretation, which skips code generation and compilation entirely.
+     */
+    public ParserRuntime loadInterpretedParserRuntime() throws IOException, NoSuchMethodException {
+        return new InterpretedParserRuntime(grammarFile, grammarName, grammarRoot, twoStageParsing, profiling);
+    }
 
-        String rootContextClassName = capitalizeFirstLetter(grammarRoot);
-        Class<?> contextClass = Class.forName(grammarName + "Parser$" + rootContextClassName + "Context", true, classLoader);
-        Field children = contextClass.getSuperclass().getDeclaredField("children");
+    public ParseResult loadParserAndParseFile(ParserRuntime parserRuntime, File file) throws IOException {
+        return parserRuntime.parse(CharStreams.fromPath(file.toPath()));
+    }
 
-        classLoader.close();
-        Object parseTrees = children.get(returnValue);
-        return (List<ParseTree>) parseTrees;
+    /**
+     * Parses the file without reading it into memory as a whole, handing over every child of the grammar root as soon
+     * as it has been parsed.
+     *
+     * @return a result without parse trees, carrying the statistics of the whole file
+     */
+    public ParseResult parseFileStreaming(ParserRuntime parserRuntime, File file, Consumer<ParseResult> topLevelTrees) throws IOException {
+        try (InputStream inputStream = Files.newInputStream(file.toPath())) {
+            UnbufferedCharStream charStream = new UnbufferedCharStream(inputStream, STREAMING_BUFFER_SIZE, StandardCharsets.UTF_8);
+            charStream.name = file.getPath();
+            return parserRuntime.parseStreaming(charStream, topLevelTrees);
+        }
     }
 }
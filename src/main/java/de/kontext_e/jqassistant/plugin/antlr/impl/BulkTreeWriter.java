@@ -0,0 +1,230 @@
+package de.kontext_e.jqassistant.plugin.antlr.impl;
+
+import com.buschmais.jqassistant.core.store.api.Store;
+import com.buschmais.xo.api.Query;
+import de.kontext_e.jqassistant.plugin.antlr.api.model.AntlrDescriptor;
+import de.kontext_e.jqassistant.plugin.antlr.api.model.TokenDescriptor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stores the parse tree with plain Cypher, bypassing the descriptor layer of the store.
+ * Nodes are created in chunks, one UNWIND statement per label and chunk, followed by one statement creating the
+ * HAS_CHILD relations of the chunk. Every chunk is committed on its own, so the transaction does not grow with the
+ * size of the file. The properties of a chunk are passed as one list per property instead of one map per node, and
+ * only the ids of the nodes that can still become parents are kept between chunks.
+ */
+class BulkTreeWriter implements ParseTreeWriter {
+
+    private static final String CREATE_NODES_QUERY = "UNWIND range(0, size($indices) - 1) AS i " +
+            "CREATE (n:Antlr:Node:%s {text: $texts[i], startOffset: $startOffsets[i], endOffset: $endOffsets[i], " +
+            "line: $lines[i], column: $columns[i]}) " +
+            "RETURN $indices[i] AS index, id(n) AS id";
+    private static final String CREATE_RELATIONS_QUERY = "UNWIND range(0, size($parents) - 1) AS i " +
+            "MATCH (parent) WHERE id(parent) = $parents[i] " +
+            "MATCH (child) WHERE id(child) = $children[i] " +
+            "CREATE (parent)-[:HAS_CHILD]->(child)";
+    private static final String CREATE_TOKEN_RELATIONS_QUERY = "UNWIND range(0, size($nodes) - 1) AS i " +
+            "MATCH (node) WHERE id(node) = $nodes[i] " +
+            "MATCH (token) WHERE id(token) = $tokens[i] " +
+            "CREATE (node)-[:OF_TOKEN]->(token)";
+
+    private final Store store;
+    private final int chunkSize;
+    private final TokenCache tokenCache;
+
+    /**
+     * @param tokenCache the shared token nodes, or null if tokens are not interned
+     */
+    BulkTreeWriter(Store store, int chunkSize, TokenCache tokenCache) {
+        this.store = store;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.tokenCache = tokenCache;
+    }
+
+    @Override
+    public void write(FlatParseTree parseTree, AntlrDescriptor rootNode, FileMetrics metrics) {
+        // make pending changes of the descriptor layer (e.g. the root node) visible to the Cypher statements
+        store.flush();
+
+        long rootId = rootNode.<Long>getId();
+        NodeIds nodeIds = new NodeIds(parseTree, Math.min(chunkSize, parseTree.size()));
+        for (int chunkStart = 0; chunkStart < parseTree.size(); chunkStart += chunkSize) {
+            int chunkEnd = Math.min(chunkStart + chunkSize, parseTree.size());
+            long nodesStart = System.nanoTime();
+            createNodes(parseTree, chunkStart, chunkEnd, nodeIds, metrics);
+            long relationsStart = System.nanoTime();
+            createRelations(parseTree, chunkStart, chunkEnd, nodeIds, rootId, metrics);
+            if (tokenCache != null) {
+                createTokenRelations(parseTree, chunkStart, chunkEnd, nodeIds, metrics);
+            }
+            commitChunk();
+            nodeIds.startChunk(chunkEnd);
+            metrics.addTime(ScanMetrics.Phase.NODE_CREATION, relationsStart - nodesStart);
+            metrics.addTime(ScanMetrics.Phase.RELATIONS, System.nanoTime() - relationsStart);
+        }
+    }
+
+    private void commitChunk() {
+        store.flush();
+        if (store.hasActiveTransaction()) {
+            store.commitTransaction();
+            store.beginTransaction();
+        }
+    }
+
+    private void createNodes(FlatParseTree parseTree, int chunkStart, int chunkEnd, NodeIds nodeIds, FileMetrics metrics) {
+        List<NodeProperties> nodesByLabel = new ArrayList<>();
+        for (int label = 0; label < parseTree.getLabelCount(); label++) {
+            nodesByLabel.add(null);
+        }
+        for (int i = chunkStart; i < chunkEnd; i++) {
+            int label = parseTree.getLabel(i);
+            if (nodesByLabel.get(label) == null) {
+                nodesByLabel.set(label, new NodeProperties());
+            }
+            nodesByLabel.get(label).add(parseTree, i);
+        }
+
+        for (int label = 0; label < nodesByLabel.size(); label++) {
+            NodeProperties nodes = nodesByLabel.get(label);
+            if (nodes == null) continue;
+
+            //Cypher does not allow for parameterization of labels, which is why string formatting is used
+            String query = String.format(CREATE_NODES_QUERY, parseTree.getLabelName(label));
+            metrics.countQuery();
+            try (Query.Result<Query.Result.CompositeRowObject> result = store.executeQuery(query, nodes.toParameters())) {
+                for (Query.Result.CompositeRowObject row : result) {
+                    int index = row.get("index", Long.class).intValue();
+                    nodeIds.set(index, row.get("id", Long.class));
+                }
+            }
+        }
+    }
+
+    private void createRelations(FlatParseTree parseTree, int chunkStart, int chunkEnd, NodeIds nodeIds, long rootId,
+                                 FileMetrics metrics) {
+        List<Long> parents = new ArrayList<>(chunkEnd - chunkStart);
+        List<Long> children = new ArrayList<>(chunkEnd - chunkStart);
+        for (int i = chunkStart; i < chunkEnd; i++) {
+            int parent = parseTree.getParent(i);
+            parents.add(parent == FlatParseTree.NO_PARENT ? rootId : nodeIds.get(parent));
+            children.add(nodeIds.get(i));
+        }
+        store.executeQuery(CREATE_RELATIONS_QUERY, Map.of("parents", parents, "children", children)).close();
+        metrics.countQuery();
+    }
+
+    private void createTokenRelations(FlatParseTree parseTree, int chunkStart, int chunkEnd, NodeIds nodeIds, FileMetrics metrics) {
+        TokenDescriptor[] tokens = tokenCache.resolve(parseTree, chunkStart, chunkEnd, metrics);
+        List<Long> nodes = new ArrayList<>();
+        List<Long> tokenIds = new ArrayList<>();
+        for (int i = chunkStart; i < chunkEnd; i++) {
+            TokenDescriptor token = tokens[i - chunkStart];
+            if (token == null) continue;
+            nodes.add(nodeIds.get(i));
+            tokenIds.add(token.<Long>getId());
+        }
+        if (nodes.isEmpty()) return;
+
+        store.executeQuery(CREATE_TOKEN_RELATIONS_QUERY, Map.of("nodes", nodes, "tokens", tokenIds)).close();
+        metrics.countQuery();
+    }
+
+    /**
+     * The properties of the nodes of one label in a chunk, one list per property. Properties that are null are not
+     * created.
+     */
+    private static final class NodeProperties {
+
+        private final List<Integer> indices = new ArrayList<>();
+        private final List<String> texts = new ArrayList<>();
+        private final List<Integer> startOffsets = new ArrayList<>();
+        private final List<Integer> endOffsets = new ArrayList<>();
+        private final List<Integer> lines = new ArrayList<>();
+        private final List<Integer> columns = new ArrayList<>();
+
+        void add(FlatParseTree parseTree, int node) {
+            indices.add(node);
+            texts.add(parseTree.getStoredText(node));
+            boolean hasSourcePosition = parseTree.hasSourcePosition(node);
+            startOffsets.add(hasSourcePosition ? parseTree.getSourceStart(node) : null);
+            endOffsets.add(hasSourcePosition ? parseTree.getSourceEnd(node) : null);
+            lines.add(hasSourcePosition ? parseTree.getLine(node) : null);
+            columns.add(hasSourcePosition ? parseTree.getColumn(node) : null);
+        }
+
+        Map<String, Object> toParameters() {
+            return Map.of("indices", indices, "texts", texts, "startOffsets", startOffsets, "endOffsets", endOffsets,
+                    "lines", lines, "columns", columns);
+        }
+    }
+
+    /**
+     * The database ids of the nodes of the current chunk and of the ancestors of its first node. As the tree is in
+     * pre-order, the parent of a node is either in the same chunk or one of these ancestors, so the ids of all other
+     * nodes written before are dropped.
+     */
+    private static final class NodeIds {
+
+        private final FlatParseTree parseTree;
+        private final long[] chunkIds;
+        private int chunkStart;
+        /**
+         * The ancestors of the first node of the chunk, sorted by their index.
+         */
+        private int[] ancestors = new int[16];
+        private long[] ancestorIds = new long[16];
+        private int ancestorCount;
+
+        NodeIds(FlatParseTree parseTree, int chunkSize) {
+            this.parseTree = parseTree;
+            this.chunkIds = new long[chunkSize];
+        }
+
+        void set(int node, long id) {
+            chunkIds[node - chunkStart] = id;
+        }
+
+        long get(int node) {
+            if (node >= chunkStart) return chunkIds[node - chunkStart];
+            return ancestorIds[Arrays.binarySearch(ancestors, 0, ancestorCount, node)];
+        }
+
+        void startChunk(int nextChunkStart) {
+            if (nextChunkStart >= parseTree.size()) return;
+
+            // the ancestors of the next chunk's first node that are in the current chunk, the nearest first
+            int parent = parseTree.getParent(nextChunkStart);
+            int newAncestors = 0;
+            int[] newAncestorIndices = new int[0];
+            while (parent >= chunkStart) {
+                if (newAncestors == newAncestorIndices.length) {
+                    newAncestorIndices = Arrays.copyOf(newAncestorIndices, Math.max(16, newAncestors * 2));
+                }
+                newAncestorIndices[newAncestors++] = parent;
+                parent = parseTree.getParent(parent);
+            }
+            // the other ancestors were already ancestors of the current chunk's first node
+            ancestorCount = parent == FlatParseTree.NO_PARENT
+                    ? 0
+                    : Arrays.binarySearch(ancestors, 0, ancestorCount, parent) + 1;
+            for (int i = newAncestors - 1; i >= 0; i--) {
+                addAncestor(newAncestorIndices[i], chunkIds[newAncestorIndices[i] - chunkStart]);
+            }
+            chunkStart = nextChunkStart;
+        }
+
+        private void addAncestor(int node, long id) {
+            if (ancestorCount == ancestors.length) {
+                ancestors = Arrays.copyOf(ancestors, ancestorCount * 2);
+                ancestorIds = Arrays.copyOf(ancestorIds, ancestorCount * 2);
+            }
+            ancestors[ancestorCount] = node;
+            ancestorIds[ancestorCount++] = id;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package de.kontext_e.jqassistant.plugin.antlr.impl;
+
+import java.util.Map;
+
+/**
+ * Defines classes from bytes held in memory, so they can be loaded without any class files on disk.
+ */
+class ByteArrayClassLoader extends ClassLoader {
+
+    private final Map<String, byte[]> classes;
+
+    /**
+     * @param classes the bytes of the classes by their binary names
+     */
+    ByteArrayClassLoader(Map<String, byte[]> classes, ClassLoader parent) {
+        super(parent);
+        this.classes = classes;
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        byte[] bytes = classes.get(name);
+        if (bytes == null) {
+            throw new ClassNotFoundException(name);
+        }
+        return defineClass(name, bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,130 @@
+package de.kontext_e.jqassistant.plugin.antlr.impl;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.Lexer;
+import org.antlr.v4.runtime.Parser;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.TokenStream;
+import org.antlr.v4.runtime.UnbufferedTokenStream;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Collections;
+import java.util.function.Consumer;
+
+/**
+ * The loaded lexer and parser classes of one grammar together with the resolved handles to instantiate and invoke
+ * them. It is kept for the lifetime of the plugin, so the static ATN and DFA cache of the generated classes are
+ * shared by all files parsed with this grammar.
+ */
+class CompiledParserRuntime implements ParserRuntime {
+
+    private final ClassLoader classLoader;
+    private final MethodHandle lexerConstructor;
+    private final MethodHandle parserConstructor;
+    private final MethodHandle grammarRootRule;
+    private final boolean twoStageParsing;
+    private final boolean profiling;
+
+    CompiledParserRuntime(ClassLoader classLoader, String grammarName, String grammarRoot, boolean twoStageParsing,
+                          boolean profiling)
+            throws IOException, ClassNotFoundException, NoSuchMethodException, IllegalAccessException {
+
+        this.classLoader = classLoader;
+        this.twoStageParsing = twoStageParsing;
+        this.profiling = profiling;
+        try {
+            Class<?> parserClass = Class.forName(grammarName + "Parser", true, classLoader);
+            Class<?> lexerClass = Class.forName(grammarName + "Lexer", true, classLoader);
+
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            this.lexerConstructor = lookup.findConstructor(lexerClass, MethodType.methodType(void.class, CharStream.class))
+                    .asType(MethodType.methodType(Lexer.class, CharStream.class));
+            this.parserConstructor = lookup.findConstructor(parserClass, MethodType.methodType(void.class, TokenStream.class))
+                    .asType(MethodType.methodType(Parser.class, TokenStream.class));
+            this.grammarRootRule = lookup.unreflect(parserClass.getMethod(grammarRoot))
+                    .asType(MethodType.methodType(ParserRuleContext.class, Parser.class));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public ParseResult parse(CharStream input) {
+        CommonTokenStream tokenStream = new CommonTokenStream(createLexer(input));
+        long lexingStart = System.nanoTime();
+        // the tokens are read up front instead of on demand, so lexing and parsing are timed separately
+        tokenStream.fill();
+        long parsingStart = System.nanoTime();
+        Parser parser = createParser(tokenStream);
+        ParserRuleContext rootContext = twoStageParsing
+                ? TwoStagePrediction.parse(parser, this::invokeGrammarRootRule)
+                : invokeGrammarRootRule(parser);
+        return new ParseResult(rootContext, parser.getRuleNames(), parser.getVocabulary())
+                .withStatistics(tokenStream.size(), parsingStart - lexingStart, System.nanoTime() - parsingStart)
+                .withProfile(ParseProfile.of(parser))
+                .withTwoStageFallback(twoStageParsing && TwoStagePrediction.fellBack(parser));
+    }
+
+    @Override
+    public ParseResult parseStreaming(CharStream input, Consumer<ParseResult> topLevelTrees) {
+        // two-stage parsing would have to rewind the token stream, which an unbuffered one can not do
+        Lexer lexer = createLexer(input);
+        UnbufferedTokenFactory tokenFactory = new UnbufferedTokenFactory();
+        lexer.setTokenFactory(tokenFactory);
+        Parser parser = createParser(new UnbufferedTokenStream<>(lexer));
+        parser.setErrorHandler(new UnbufferedErrorStrategy());
+        TopLevelTreeListener topLevelTreeListener = new TopLevelTreeListener(parser.getRuleNames(), parser.getVocabulary(), topLevelTrees);
+        parser.addParseListener(topLevelTreeListener);
+        topLevelTreeListener.handOverRemainingTrees(invokeGrammarRootRule(parser));
+        return new ParseResult(Collections.emptyList(), parser.getRuleNames(), parser.getVocabulary())
+                .withStatistics(tokenFactory.getTokenCount(), 0, 0)
+                .withProfile(ParseProfile.of(parser));
+    }
+
+    private Lexer createLexer(CharStream input) {
+        try {
+            return (Lexer) lexerConstructor.invokeExact(input);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException("Could not invoke generated lexer or parser", t);
+        }
+    }
+
+    private Parser createParser(TokenStream tokenStream) {
+        try {
+            Parser parser = (Parser) parserConstructor.invokeExact(tokenStream);
+            if (profiling) {
+                parser.setProfile(true);
+            }
+            return parser;
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException("Could not invoke generated lexer or parser", t);
+        }
+    }
+
+    private ParserRuleContext invokeGrammarRootRule(Parser parser) {
+        try {
+            return (ParserRuleContext) grammarRootRule.invokeExact(parser);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException("Could not invoke generated lexer or parser", t);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (classLoader instanceof Closeable) {
+            ((Closeable) classLoader).close();
+        }
+    }
+}
@@ -1,22 +1,45 @@
 package de.kontext_e.jqassistant.plugin.antlr.impl;
 
 import de.kontext_e.jqassistant.plugin.antlr.api.config.GrammarConfiguration;
+import de.kontext_e.jqassistant.plugin.antlr.api.config.NodeTextMode;
 import de.kontext_e.jqassistant.plugin.antlr.api.config.PluginConfig;
+import de.kontext_e.jqassistant.plugin.antlr.api.config.WriterMode;
 import io.smallrye.config.SmallRyeConfig;
 import io.smallrye.config.SmallRyeConfigBuilder;
 import io.smallrye.config.source.yaml.YamlConfigSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
 public class ConfigurationProvider {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConfigurationProvider.class);
+
     private boolean deleteParserAndLexerAfterScan;
     private boolean createEmptyNodes;
+    private boolean compileInMemory;
+    private boolean incremental;
+    private File parserCacheDirectory;
+    private NodeTextMode ruleNodeTextMode = NodeTextMode.FULL;
+    private int ruleNodeTextMaxLength;
+    private WriterMode writerMode = WriterMode.DESCRIPTOR;
+    private int bulkChunkSize;
+    private int parallelism = 1;
+    private int queueDepth;
+    private File metricsFile;
+    private int metricsSlowestFiles;
+    private boolean internTokens;
+    private int tokenCacheSize;
+    private boolean warmUp;
+    private int warmUpThreads;
     private final Map<String, GrammarConfiguration> grammarConfigurations = new HashMap<>();
 
     ConfigurationProvider() {}
@@ -27,13 +50,66 @@ public class ConfigurationProvider {
 
         createEmptyNodes = pluginConfig.createEmptyNodes();
         deleteParserAndLexerAfterScan = pluginConfig.deleteLexerAndParserAfterScan();
+        compileInMemory = pluginConfig.compileInMemory();
+        incremental = pluginConfig.incremental();
+        parserCacheDirectory = pluginConfig.parserCacheDirectory()
+                .map(directory -> resolvePath(configFile, directory))
+                .orElse(null);
+        ruleNodeTextMode = pluginConfig.ruleNodeText();
+        ruleNodeTextMaxLength = pluginConfig.ruleNodeTextMaxLength();
+        writerMode = pluginConfig.writerMode();
+        bulkChunkSize = pluginConfig.bulkChunkSize();
+        parallelism = Math.max(1, pluginConfig.parallelism());
+        queueDepth = Math.max(1, pluginConfig.queueDepth());
+        metricsFile = pluginConfig.metricsFile()
+                .map(file -> resolvePath(configFile, file))
+                .orElse(null);
+        metricsSlowestFiles = Math.max(0, pluginConfig.metricsSlowestFiles());
+        internTokens = pluginConfig.internTokens();
+        tokenCacheSize = Math.max(1, pluginConfig.tokenCacheSize());
+        warmUp = pluginConfig.warmUp();
+        warmUpThreads = pluginConfig.warmUpThreads() > 0
+                ? pluginConfig.warmUpThreads()
+                : Runtime.getRuntime().availableProcessors();
 
         for (GrammarConfiguration grammarConfiguration : pluginConfig.grammars()){
+            if (!isValid(grammarConfiguration)) continue;
+            warnAboutIgnoredSettings(grammarConfiguration);
             String fileExtension = grammarConfiguration.getFileExtension();
             grammarConfigurations.put(fileExtension, grammarConfiguration);
         }
     }
 
+    private static boolean isValid(GrammarConfiguration grammarConfiguration) {
+        if (grammarConfiguration.optionalGrammarFile().isPresent() == grammarConfiguration.parserJar().isPresent()) {
+            LOGGER.error("Grammar configuration needs either a grammarFile or a parserJar: {}", grammarConfiguration.getGrammarLocation());
+            return false;
+        }
+        // a parser jar may contain several grammars, so it does not tell which one is meant
+        if (grammarConfiguration.parserJar().isPresent() && grammarConfiguration.grammarName().isEmpty()) {
+            LOGGER.error("Grammar configuration with parserJar needs a grammarName: {}", grammarConfiguration.getGrammarLocation());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Streamed files are parsed in one pass on the scanning thread, so settings that need the whole file in memory or
+     * another thread do not apply to them.
+     */
+    private void warnAboutIgnoredSettings(GrammarConfiguration grammarConfiguration) {
+        if (!grammarConfiguration.getStreaming()) return;
+
+        if (grammarConfiguration.getTwoStageParsing()) {
+            LOGGER.warn("twoStageParsing is ignored for grammar {} as its files are parsed with streaming: {}",
+                    grammarConfiguration.getGrammarName(), grammarConfiguration.getGrammarLocation());
+        }
+        if (parallelism > 1) {
+            LOGGER.warn("parallelism is ignored for grammar {} as its files are parsed with streaming: {}",
+                    grammarConfiguration.getGrammarName(), grammarConfiguration.getGrammarLocation());
+        }
+    }
+
     private static SmallRyeConfig loadYamlFile(File configFile) throws IOException {
         URL url = Paths.get(configFile.getPath()).toUri().toURL();
         YamlConfigSource yamlConfigSource = new YamlConfigSource(url, 300);
@@ -43,18 +119,93 @@ public class ConfigurationProvider {
                 .build();
     }
 
+    /**
+     * Resolves a leading ~ to the home directory and relative paths against the directory of the configuration file.
+     */
+    private static File resolvePath(File configFile, String path) {
+        if (path.equals("~") || path.startsWith("~/")) {
+            return new File(System.getProperty("user.home") + path.substring(1));
+        }
+        Path configFilePath = configFile.getAbsoluteFile().getParentFile().toPath();
+        return configFilePath.resolve(path).normalize().toFile();
+    }
+
     public boolean getDeleteParserAndLexerAfterScan() {
         return deleteParserAndLexerAfterScan;
     }
 
+    public boolean getCompileInMemory() {
+        return compileInMemory;
+    }
+
+    public boolean getIncremental() {
+        return incremental;
+    }
+
+    public File getParserCacheDirectory() {
+        return parserCacheDirectory;
+    }
+
     public boolean getCreateEmptyNodes() {
         return createEmptyNodes;
     }
 
+    public NodeTextMode getRuleNodeTextMode() {
+        return ruleNodeTextMode;
+    }
+
+    public int getRuleNodeTextMaxLength() {
+        return ruleNodeTextMaxLength;
+    }
+
+    public WriterMode getWriterMode() {
+        return writerMode;
+    }
+
+    public int getBulkChunkSize() {
+        return bulkChunkSize;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public File getMetricsFile() {
+        return metricsFile;
+    }
+
+    public int getMetricsSlowestFiles() {
+        return metricsSlowestFiles;
+    }
+
+    public boolean getInternTokens() {
+        return internTokens;
+    }
+
+    public int getTokenCacheSize() {
+        return tokenCacheSize;
+    }
+
+    public boolean getWarmUp() {
+        return warmUp;
+    }
+
+    public int getWarmUpThreads() {
+        return warmUpThreads;
+    }
+
     public GrammarConfiguration getGrammarConfigurationFor(String fileExtension) {
         return grammarConfigurations.get(fileExtension);
     }
 
+    public Collection<GrammarConfiguration> getGrammarConfigurations() {
+        return grammarConfigurations.values();
+    }
+
     public boolean isConfiguredFileExtension(String fileExtension) {
         return grammarConfigurations.containsKey(fileExtension);
     }
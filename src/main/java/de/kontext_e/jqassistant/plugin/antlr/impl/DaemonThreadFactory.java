@@ -0,0 +1,28 @@
+package de.kontext_e.jqassistant.plugin.antlr.impl;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates numbered daemon threads for the work the plugin does in the background, like parsing files ahead or warming
+ * up grammars, which must never keep the JVM from exiting.
+ */
+class DaemonThreadFactory implements ThreadFactory {
+
+    private final String namePrefix;
+    private final AtomicInteger threadCount = new AtomicInteger();
+
+    /**
+     * @param namePrefix the name of the threads, which is followed by their number
+     */
+    DaemonThreadFactory(String namePrefix) {
+        this.namePrefix = namePrefix;
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, namePrefix + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+}
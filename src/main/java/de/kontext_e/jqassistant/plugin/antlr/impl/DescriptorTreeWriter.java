@@ -0,0 +1,84 @@
+package de.kontext_e.jqassistant.plugin.antlr.impl;
+
+import com.buschmais.jqassistant.core.store.api.Store;
+import de.kontext_e.jqassistant.plugin.antlr.api.model.AntlrDescriptor;
+import de.kontext_e.jqassistant.plugin.antlr.api.model.NodeDescriptor;
+import de.kontext_e.jqassistant.plugin.antlr.api.model.TokenDescriptor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stores the parse tree through the jQAssistant store, one descriptor per node.
+ * The custom labels are applied afterwards with one statement per distinct label.
+ */
+class DescriptorTreeWriter implements ParseTreeWriter {
+
+    private static final String ADD_LABEL_QUERY = "UNWIND $ids AS nodeId MATCH (n) WHERE id(n) = nodeId SET n:%s";
+
+    private final Store store;
+    private final TokenCache tokenCache;
+
+    /**
+     * @param tokenCache the shared token nodes, or null if tokens are not interned
+     */
+    DescriptorTreeWriter(Store store, TokenCache tokenCache) {
+        this.store = store;
+        this.tokenCache = tokenCache;
+    }
+
+    @Override
+    public void write(FlatParseTree parseTree, AntlrDescriptor rootNode, FileMetrics metrics) {
+        long start = System.nanoTime();
+        TokenDescriptor[] tokens = tokenCache != null ? tokenCache.resolve(parseTree, 0, parseTree.size(), metrics) : null;
+        NodeDescriptor[] nodes = new NodeDescriptor[parseTree.size()];
+        List<List<Long>> nodeIdsByLabel = new ArrayList<>();
+        for (int label = 0; label < parseTree.getLabelCount(); label++) {
+            nodeIdsByLabel.add(new ArrayList<>());
+        }
+
+        for (int i = 0; i < parseTree.size(); i++) {
+            NodeDescriptor node = store.create(NodeDescriptor.class);
+            String text = parseTree.getStoredText(i);
+            if (text != null) {
+                node.setText(text);
+            }
+            if (parseTree.hasSourcePosition(i)) {
+                node.setStartOffset(parseTree.getSourceStart(i));
+                node.setEndOffset(parseTree.getSourceEnd(i));
+                node.setLine(parseTree.getLine(i));
+                node.setColumn(parseTree.getColumn(i));
+            }
+            if (tokens != null && tokens[i] != null) {
+                node.setToken(tokens[i]);
+            }
+
+            int parent = parseTree.getParent(i);
+            AntlrDescriptor parentNode = parent == FlatParseTree.NO_PARENT ? rootNode : nodes[parent];
+            parentNode.getChildren().add(node);
+
+            Long id = node.getId();
+            nodeIdsByLabel.get(parseTree.getLabel(i)).add(id);
+            nodes[i] = node;
+        }
+
+        long labelsStart = System.nanoTime();
+        // the relations are created together with the nodes by adding them to the children of their parents
+        metrics.addTime(ScanMetrics.Phase.NODE_CREATION, labelsStart - start);
+        addCustomLabelsToDescriptors(parseTree, nodeIdsByLabel, metrics);
+        metrics.addTime(ScanMetrics.Phase.LABELS, System.nanoTime() - labelsStart);
+    }
+
+    private void addCustomLabelsToDescriptors(FlatParseTree parseTree, List<List<Long>> nodeIdsByLabel, FileMetrics metrics) {
+        for (int label = 0; label < nodeIdsByLabel.size(); label++) {
+            List<Long> ids = nodeIdsByLabel.get(label);
+            if (ids.isEmpty()) continue;
+
+            //Cypher does not allow for parameterization of labels, which is why string formatting is used
+            String query = String.format(ADD_LABEL_QUERY, parseTree.getLabelName(label));
+            store.executeQuery(query, Map.of("ids", ids)).close();
+            metrics.countQuery();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package de.kontext_e.jqassistant.plugin.antlr.impl;
+
+import de.kontext_e.jqassistant.plugin.antlr.api.config.GrammarConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The included and excluded file locations of a grammar, resolved once when the plugin is configured. Locations are
+ * resolved to real paths and kept in a set, so a file is matched by looking up its parent directories. Locations
+ * containing glob characters are matched as glob patterns against the real path of the file instead.
+ */
+class FileLocationFilter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileLocationFilter.class);
+
+    private static final Pattern GLOB_CHARACTERS = Pattern.compile("[*?\\[{]");
+
+    private final Set<Path> includedLocations = new HashSet<>();
+    private final List<PathMatcher> includedPatterns = new ArrayList<>();
+    private final Set<Path> excludedLocations = new HashSet<>();
+    private final List<PathMatcher> excludedPatterns = new ArrayList<>();
+
+    /**
+     * @param baseDirectory the directory relative locations are resolved against
+     */
+    FileLocationFilter(GrammarConfiguration grammarConfiguration, Path baseDirectory) {
+        for (String location : grammarConfiguration.getIncludedFileLocations()) {
+            addLocation(location, baseDirectory, includedLocations, includedPatterns);
+        }
+        for (String location : grammarConfiguration.getExcludedFileLocations()) {
+            addLocation(location, baseDirectory, excludedLocations, excludedPatterns);
+        }
+    }
+
+    private static void addLocation(String location, Path baseDirectory, Set<Path> locations, List<PathMatcher> patterns) {
+        Matcher globCharacter = GLOB_CHARACTERS.matcher(location);
+        if (globCharacter.find()) {
+            patterns.add(toPathMatcher(location.replace('\\', '/'), globCharacter.start(), baseDirectory));
+            return;
+        }
+
+        Path path = baseDirectory.resolve(location).normalize();
+        try {
+            locations.add(path.toRealPath());
+        } catch (IOException e) {
+            // a location that does not exist can not contain any file to be scanned
+            LOGGER.warn("Could not resolve file location: {}, try using absolute paths", path);
+        }
+    }
+
+    /**
+     * Resolves the directories in front of the first glob character like a plain location, as glob characters are not
+     * allowed in paths on every platform, and matches the rest as a glob pattern below them. A leading
+     * {@code **&#47;} also matches no directory at all, so files directly in the directory are matched as well.
+     */
+    private static PathMatcher toPathMatcher(String location, int globStart, Path baseDirectory) {
+        int directoryEnd = location.lastIndexOf('/', globStart);
+        String directoryPart = directoryEnd == 0 ? "/" : location.substring(0, Math.max(directoryEnd, 0));
+        Path directory = baseDirectory.resolve(directoryPart).normalize();
+        try {
+            directory = directory.toRealPath();
+        } catch (IOException e) {
+            LOGGER.warn("Could not resolve file location: {}, try using absolute paths", directory);
+        }
+
+        String directoryPattern = directory.toString().replace('\\', '/');
+        if (!directoryPattern.endsWith("/")) {
+            directoryPattern += "/";
+        }
+        String globPart = location.substring(directoryEnd + 1);
+        PathMatcher pattern = FileSystems.getDefault().getPathMatcher("glob:" + directoryPattern + globPart);
+        if (!globPart.startsWith("**/")) return pattern;
+
+        // "**/" only matches one directory or more, files directly in the directory are matched without it
+        PathMatcher directChildren = FileSystems.getDefault().getPathMatcher("glob:" + directoryPattern + globPart.substring(3));
+        return path -> pattern.matches(path) || directChildren.matches(path);
+    }
+
+    /**
+     * @return whether files have to be matched at all, otherwise every file is accepted without resolving its path
+     */
+    boolean hasLocations() {
+        return !includedLocations.isEmpty() || !includedPatterns.isEmpty()
+                || !excludedLocations.isEmpty() || !excludedPatterns.isEmpty();
+    }
+
+    /**
+     * @param realPath the real path of the file, see {@link Path#toRealPath}
+     */
+    boolean accepts(Path realPath) {
+        if (matches(realPath, includedLocations, includedPatterns)) return true;
+        return !matches(realPath, excludedLocations, excludedPatterns);
+    }
+
+    private static boolean matches(Path realPath, Set<Path> locations, List<PathMatcher> patterns) {
+        if (!locations.isEmpty()) {
+            for (Path path = realPath; path != null; path = path.getParent()) {
+                if (locations.contains(path)) return true;
+            }
+        }
+        for (PathMatcher pattern : patterns) {
+            if (pattern.matches(realPath)) return true;
+        }
+        return false;
+    }
+}
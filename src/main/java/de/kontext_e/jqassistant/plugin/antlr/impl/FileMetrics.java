@@ -0,0 +1,124 @@
+package de.kontext_e.jqassistant.plugin.antlr.impl;
+
+import de.kontext_e.jqassistant.plugin.antlr.impl.ScanMetrics.Phase;
+
+/**
+ * The timings and counts of one scanned file. It is filled by the thread parsing the file and then by the scanning
+ * thread writing its tree, never by both at the same time, so it needs no synchronization.
+ */
+class FileMetrics {
+
+    private final String path;
+    private final String grammarName;
+    private final long[] phaseNanos = new long[Phase.values().length];
+    private long bytes;
+    private long tokens;
+    private long nodes;
+    private long queries;
+    private int maxDepth;
+    private long twoStageFallbacks;
+    private ParseProfile profile;
+
+    FileMetrics(String path, String grammarName) {
+        this.path = path;
+        this.grammarName = grammarName;
+    }
+
+    void addTime(Phase phase, long nanos) {
+        phaseNanos[phase.ordinal()] += nanos;
+    }
+
+    void addBytes(long bytes) {
+        this.bytes += bytes;
+    }
+
+    void addTokens(long tokens) {
+        this.tokens += tokens;
+    }
+
+    void addNodes(long nodes) {
+        this.nodes += nodes;
+    }
+
+    void countQuery() {
+        queries++;
+    }
+
+    void countTwoStageFallback() {
+        twoStageFallbacks++;
+    }
+
+    void updateMaxDepth(int depth) {
+        maxDepth = Math.max(maxDepth, depth);
+    }
+
+    void setProfile(ParseProfile profile) {
+        this.profile = profile;
+    }
+
+    void addAll(FileMetrics other) {
+        for (int i = 0; i < phaseNanos.length; i++) {
+            phaseNanos[i] += other.phaseNanos[i];
+        }
+        bytes += other.bytes;
+        tokens += other.tokens;
+        nodes += other.nodes;
+        queries += other.queries;
+        maxDepth = Math.max(maxDepth, other.maxDepth);
+        twoStageFallbacks += other.twoStageFallbacks;
+    }
+
+    String getPath() {
+        return path;
+    }
+
+    String getGrammarName() {
+        return grammarName;
+    }
+
+    long getTime(Phase phase) {
+        return phaseNanos[phase.ordinal()];
+    }
+
+    long getTotalTime() {
+        long totalNanos = 0;
+        for (long nanos : phaseNanos) {
+            totalNanos += nanos;
+        }
+        return totalNanos;
+    }
+
+    long getBytes() {
+        return bytes;
+    }
+
+    long getTokens() {
+        return tokens;
+    }
+
+    long getNodes() {
+        return nodes;
+    }
+
+    long getQueries() {
+        return queries;
+    }
+
+    int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * @return the number of files whose two-stage parsing fell back to LL prediction
+     */
+    long getTwoStageFallbacks() {
+        return twoStageFallbacks;
+    }
+
+    /**
+     * @return the prediction statistics of the file, or null if its grammar is not profiled
+     */
+    ParseProfile getProfile() {
+        return profile;
+    }
+}
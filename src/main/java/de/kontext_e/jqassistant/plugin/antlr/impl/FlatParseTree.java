@@ -0,0 +1,346 @@
+package de.kontext_e.jqassistant.plugin.antlr.impl;
+
+import de.kontext_e.jqassistant.plugin.antlr.api.config.NodeTextMode;
+import org.antlr.v4.runtime.Vocabulary;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A parse tree flattened into primitive arrays in pre-order, so that a parent always has a lower index than its children.
+ * The texts of all terminal nodes are concatenated into one buffer and every node only stores the offsets of the text
+ * it spans, so the text of a node is a single substring instead of being rebuilt from its descendants.
+ */
+class FlatParseTree {
+
+    static final int NO_PARENT = -1;
+
+    private static final int UNKNOWN_POSITION = -1;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private int size;
+    private int[] parents = new int[INITIAL_CAPACITY];
+    private int[] labels = new int[INITIAL_CAPACITY];
+    private int[] textStarts = new int[INITIAL_CAPACITY];
+    private int[] textEnds = new int[INITIAL_CAPACITY];
+    private int[] nonBlankTerminalsBefore = new int[INITIAL_CAPACITY];
+    private final BitSet terminals = new BitSet();
+    private final BitSet blankNodes = new BitSet();
+
+    private final StringBuilder text = new StringBuilder();
+    private int nonBlankTerminalCount;
+
+    private final List<String> labelNames = new ArrayList<>();
+    private final Map<String, Integer> labelIndices = new HashMap<>();
+
+    private NodeTextMode ruleNodeTextMode = NodeTextMode.FULL;
+    private int ruleNodeTextMaxLength;
+
+    // only allocated when the positions of the nodes in the source file are stored
+    private int[] sourceStarts;
+    private int[] sourceEnds;
+    private int[] lines;
+    private int[] columns;
+    // the span of all nodes, which is the span of the grammar root they are the descendants of
+    private int rootSourceStart = UNKNOWN_POSITION;
+    private int rootSourceEnd;
+    private int rootLine;
+    private int rootColumn;
+
+    // only allocated when terminal nodes refer to shared token nodes instead of storing their text
+    private int[] tokenTypes;
+    private Vocabulary vocabulary;
+
+    int addRuleNode(int parent, String label) {
+        if (size == parents.length) {
+            int capacity = size * 2;
+            parents = Arrays.copyOf(parents, capacity);
+            labels = Arrays.copyOf(labels, capacity);
+            textStarts = Arrays.copyOf(textStarts, capacity);
+            textEnds = Arrays.copyOf(textEnds, capacity);
+            nonBlankTerminalsBefore = Arrays.copyOf(nonBlankTerminalsBefore, capacity);
+            if (hasSourcePositions()) {
+                sourceStarts = Arrays.copyOf(sourceStarts, capacity);
+                sourceEnds = Arrays.copyOf(sourceEnds, capacity);
+                lines = Arrays.copyOf(lines, capacity);
+                columns = Arrays.copyOf(columns, capacity);
+            }
+            if (hasInternedTokens()) {
+                tokenTypes = Arrays.copyOf(tokenTypes, capacity);
+            }
+        }
+        if (hasSourcePositions()) {
+            sourceStarts[size] = UNKNOWN_POSITION;
+        }
+        parents[size] = parent;
+        labels[size] = labelIndices.computeIfAbsent(label, this::addLabelName);
+        textStarts[size] = text.length();
+        textEnds[size] = text.length();
+        nonBlankTerminalsBefore[size] = nonBlankTerminalCount;
+        return size++;
+    }
+
+    int addTerminalNode(int parent, String label, String terminalText) {
+        int node = addRuleNode(parent, label);
+        terminals.set(node);
+        appendText(terminalText);
+        closeNode(node);
+        return node;
+    }
+
+    /**
+     * @param start the index of the first code point of the node in its source file
+     * @param end   the index of the code point following the node
+     * @param column the index of the first code point of the node in its line
+     */
+    void setSourcePosition(int node, int start, int end, int line, int column) {
+        sourceStarts[node] = start;
+        sourceEnds[node] = end;
+        lines[node] = line;
+        columns[node] = column;
+        if (rootSourceStart == UNKNOWN_POSITION || start < rootSourceStart) {
+            rootSourceStart = start;
+            rootLine = line;
+            rootColumn = column;
+        }
+        rootSourceEnd = Math.max(rootSourceEnd, end);
+    }
+
+    /**
+     * Appends text that is part of the text of the enclosing nodes without being a node of its own, e.g. the text of
+     * a pruned terminal.
+     */
+    void appendText(String terminalText) {
+        text.append(terminalText);
+        if (!terminalText.isBlank()) {
+            nonBlankTerminalCount++;
+        }
+    }
+
+    private int addLabelName(String label) {
+        labelNames.add(label);
+        return labelNames.size() - 1;
+    }
+
+    void closeNode(int node) {
+        textEnds[node] = text.length();
+        if (nonBlankTerminalsBefore[node] == nonBlankTerminalCount) {
+            blankNodes.set(node);
+        }
+    }
+
+    /**
+     * Removes all nodes whose text is blank. As the descendants of a blank node are blank as well, the parent of every
+     * remaining node remains in the tree.
+     */
+    void removeBlankNodes() {
+        int[] newIndices = new int[size];
+        int newSize = 0;
+        for (int node = 0; node < size; node++) {
+            if (blankNodes.get(node)) {
+                newIndices[node] = NO_PARENT;
+                continue;
+            }
+            int parent = parents[node];
+            parents[newSize] = parent == NO_PARENT ? NO_PARENT : newIndices[parent];
+            labels[newSize] = labels[node];
+            textStarts[newSize] = textStarts[node];
+            textEnds[newSize] = textEnds[node];
+            if (hasSourcePositions()) {
+                sourceStarts[newSize] = sourceStarts[node];
+                sourceEnds[newSize] = sourceEnds[node];
+                lines[newSize] = lines[node];
+                columns[newSize] = columns[node];
+            }
+            if (hasInternedTokens()) {
+                tokenTypes[newSize] = tokenTypes[node];
+            }
+            terminals.set(newSize, terminals.get(node));
+            newIndices[node] = newSize++;
+        }
+        terminals.clear(newSize, size);
+        blankNodes.clear();
+        size = newSize;
+    }
+
+    void setRuleNodeText(NodeTextMode mode, int maxLength) {
+        this.ruleNodeTextMode = mode;
+        this.ruleNodeTextMaxLength = maxLength;
+        if (mode == NodeTextMode.OFFSETS && sourceStarts == null) {
+            sourceStarts = new int[parents.length];
+            sourceEnds = new int[parents.length];
+            lines = new int[parents.length];
+            columns = new int[parents.length];
+            Arrays.fill(sourceStarts, 0, size, UNKNOWN_POSITION);
+        }
+    }
+
+    /**
+     * Makes the terminal nodes refer to shared token nodes, whose names are taken from the vocabulary.
+     */
+    void internTokens(Vocabulary vocabulary) {
+        this.vocabulary = vocabulary;
+        if (tokenTypes == null) {
+            tokenTypes = new int[parents.length];
+        }
+    }
+
+    boolean hasInternedTokens() {
+        return tokenTypes != null;
+    }
+
+    void setTokenType(int node, int tokenType) {
+        tokenTypes[node] = tokenType;
+    }
+
+    /**
+     * @return the name of the token of the terminal node, like it is given in the grammar, e.g. ID or '{'
+     */
+    String getTokenName(int node) {
+        return vocabulary.getDisplayName(tokenTypes[node]);
+    }
+
+    boolean hasSourcePositions() {
+        return sourceStarts != null;
+    }
+
+    /**
+     * @return whether the position of the node in its source file is known, which it is not for nodes without a
+     * token in the file, e.g. tokens conjured up during error recovery
+     */
+    boolean hasSourcePosition(int node) {
+        return hasSourcePositions() && sourceStarts[node] != UNKNOWN_POSITION;
+    }
+
+    int getSourceStart(int node) {
+        return sourceStarts[node];
+    }
+
+    int getSourceEnd(int node) {
+        return sourceEnds[node];
+    }
+
+    int getLine(int node) {
+        return lines[node];
+    }
+
+    int getColumn(int node) {
+        return columns[node];
+    }
+
+    /**
+     * @return whether the position of the grammar root is known, which it is once one of its descendants has a position
+     */
+    boolean hasRootSourcePosition() {
+        return rootSourceStart != UNKNOWN_POSITION;
+    }
+
+    int getRootSourceStart() {
+        return rootSourceStart;
+    }
+
+    int getRootSourceEnd() {
+        return rootSourceEnd;
+    }
+
+    int getRootLine() {
+        return rootLine;
+    }
+
+    int getRootColumn() {
+        return rootColumn;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int getParent(int node) {
+        return parents[node];
+    }
+
+    int getLabel(int node) {
+        return labels[node];
+    }
+
+    String getLabelName(int label) {
+        return labelNames.get(label);
+    }
+
+    int getLabelCount() {
+        return labelNames.size();
+    }
+
+    /**
+     * @return the number of nodes on the longest path from a child of the grammar root down to a leaf
+     */
+    int getMaxDepth() {
+        int[] depths = new int[size];
+        int maxDepth = 0;
+        for (int node = 0; node < size; node++) {
+            int parent = parents[node];
+            depths[node] = parent == NO_PARENT ? 1 : depths[parent] + 1;
+            maxDepth = Math.max(maxDepth, depths[node]);
+        }
+        return maxDepth;
+    }
+
+    boolean isTerminal(int node) {
+        return terminals.get(node);
+    }
+
+    String getText(int node) {
+        return text.substring(textStarts[node], textEnds[node]);
+    }
+
+    /**
+     * @return the text to be stored for the node according to the configured mode, or null if none is to be stored
+     */
+    String getStoredText(int node) {
+        if (isTerminal(node)) return hasInternedTokens() ? null : getText(node);
+
+        switch (ruleNodeTextMode) {
+            case NONE:
+            case OFFSETS:
+                return null;
+            case TRUNCATED:
+                return truncatedText(textStarts[node], textEnds[node]);
+            default:
+                return getText(node);
+        }
+    }
+
+    /**
+     * @return the text to be stored for the grammar root according to the configured mode, or null if none is to be
+     * stored
+     */
+    String getStoredRootText() {
+        switch (ruleNodeTextMode) {
+            case NONE:
+            case OFFSETS:
+                return null;
+            case TRUNCATED:
+                return truncatedText(0, text.length());
+            default:
+                return text.toString();
+        }
+    }
+
+    /**
+     * Cuts the text after at most ruleNodeTextMaxLength chars, but never between the two chars of a surrogate pair,
+     * so no unpaired surrogate is stored.
+     */
+    private String truncatedText(int start, int end) {
+        int truncatedEnd = Math.min(end, start + ruleNodeTextMaxLength);
+        if (truncatedEnd < end && truncatedEnd > start && Character.isHighSurrogate(text.charAt(truncatedEnd - 1))
+                && Character.isLowSurrogate(text.charAt(truncatedEnd))) {
+            truncatedEnd--;
+        }
+        return text.substring(start, truncatedEnd);
+    }
+}
@@ -0,0 +1,115 @@
+package de.kontext_e.jqassistant.plugin.antlr.impl;
+
+import org.antlr.v4.Tool;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Computes a hash over everything that determines the parse trees of a grammar: the grammar file, the grammars it
+ * imports, its token vocabulary and the ANTLR version. The generated and compiled lexer and parser additionally depend
+ * on the java version the classes are compiled for.
+ */
+public class GrammarFingerprint {
+
+    private static final Pattern IMPORT_PATTERN = Pattern.compile("\\bimport\\s+([^;]+);");
+    private static final Pattern TOKEN_VOCAB_PATTERN = Pattern.compile("\\btokenVocab\\s*=\\s*([\\w.]+)\\s*;");
+    private static final int FINGERPRINT_LENGTH = 16;
+
+    private GrammarFingerprint() {}
+
+    public static String of(File grammarFile) throws IOException {
+        return of(grammarFile, Collections.emptyList());
+    }
+
+    /**
+     * @return the fingerprint of the lexer and parser generated and compiled from the grammar, which changes with the
+     * java version, unlike the parse trees they produce
+     */
+    public static String ofLexerAndParser(File grammarFile) throws IOException {
+        return of(grammarFile, List.of("java=" + Runtime.version().feature()));
+    }
+
+    /**
+     * @param settings further settings to be included, e.g. the options that determine the stored parse trees
+     */
+    public static String of(File grammarFile, List<String> settings) throws IOException {
+        MessageDigest digest = Utils.createSha256Digest();
+        for (File file : collectGrammarFiles(grammarFile)) {
+            digest.update(file.getName().getBytes(StandardCharsets.UTF_8));
+            digest.update(Files.readAllBytes(file.toPath()));
+        }
+        digest.update(("antlr=" + Tool.VERSION).getBytes(StandardCharsets.UTF_8));
+        for (String setting : settings) {
+            digest.update(setting.getBytes(StandardCharsets.UTF_8));
+        }
+        return Utils.toHex(digest.digest()).substring(0, FINGERPRINT_LENGTH);
+    }
+
+    /**
+     * @param packagedFingerprint the fingerprint of a grammar whose lexer and parser have been packaged into a jar
+     * @param settings            further settings to be included, e.g. the options that determine the stored parse trees
+     */
+    public static String of(String packagedFingerprint, List<String> settings) {
+        MessageDigest digest = Utils.createSha256Digest();
+        digest.update(("packaged=" + packagedFingerprint).getBytes(StandardCharsets.UTF_8));
+        for (String setting : settings) {
+            digest.update(setting.getBytes(StandardCharsets.UTF_8));
+        }
+        return Utils.toHex(digest.digest()).substring(0, FINGERPRINT_LENGTH);
+    }
+
+    /**
+     * Follows imports and token vocabularies of the grammar, which ANTLR looks up next to the grammar file.
+     */
+    private static Set<File> collectGrammarFiles(File grammarFile) throws IOException {
+        File grammarDirectory = grammarFile.getAbsoluteFile().getParentFile();
+        Set<File> grammarFiles = new LinkedHashSet<>();
+        Deque<File> filesToVisit = new ArrayDeque<>();
+        filesToVisit.add(grammarFile.getAbsoluteFile());
+
+        while (!filesToVisit.isEmpty()) {
+            File file = filesToVisit.poll();
+            if (!grammarFiles.add(file) || !file.getName().endsWith(".g4")) continue;
+
+            String grammarText = Files.readString(file.toPath());
+            for (String dependency : findDependencies(grammarText)) {
+                for (String extension : new String[]{".g4", ".tokens"}) {
+                    File dependencyFile = new File(grammarDirectory, dependency + extension);
+                    if (dependencyFile.isFile()) {
+                        filesToVisit.add(dependencyFile);
+                    }
+                }
+            }
+        }
+        return grammarFiles;
+    }
+
+    private static Set<String> findDependencies(String grammarText) {
+        Set<String> dependencies = new LinkedHashSet<>();
+        Matcher importMatcher = IMPORT_PATTERN.matcher(grammarText);
+        while (importMatcher.find()) {
+            for (String importedGrammar : importMatcher.group(1).split(",")) {
+                // delegate grammars may be aliased as "alias = GrammarName"
+                String[] aliasAndName = importedGrammar.split("=");
+                dependencies.add(aliasAndName[aliasAndName.length - 1].trim());
+            }
+        }
+        Matcher tokenVocabMatcher = TOKEN_VOCAB_PATTERN.matcher(grammarText);
+        while (tokenVocabMatcher.find()) {
+            dependencies.add(tokenVocabMatcher.group(1));
+        }
+        return dependencies;
+    }
+}
@@ -0,0 +1,205 @@
+package de.kontext_e.jqassistant.plugin.antlr.impl;
+
+import de.kontext_e.jqassistant.plugin.antlr.api.config.GrammarConfiguration;
+import org.antlr.v4.Tool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Builds the lexers and parsers of all grammars of a plugin configuration ahead of time into a jar, which grammars
+ * refer to by their parserJar instead of their grammarFile, so a scan neither runs ANTLR nor a java compiler. The
+ * classes of every grammar are put into a directory of the jar named after the grammar and its fingerprint, so grammars
+ * of the same name from different directories do not collide. The manifest has a section for every such directory,
+ * which names the grammar, the fingerprint and the file extensions it has been configured for.
+ * <p>
+ * Usage: {@code GrammarPackager <plugin configuration file> <jar file> <version>}
+ */
+public class GrammarPackager {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GrammarPackager.class);
+
+    private static final Attributes.Name GRAMMARS = new Attributes.Name("Antlr-Grammars");
+    private static final Attributes.Name ANTLR_VERSION = new Attributes.Name("Antlr-Version");
+    private static final Attributes.Name GRAMMAR_NAME = new Attributes.Name("Antlr-Grammar-Name");
+    private static final Attributes.Name GRAMMAR_FINGERPRINT = new Attributes.Name("Antlr-Grammar-Fingerprint");
+    private static final Attributes.Name GRAMMAR_FILE = new Attributes.Name("Antlr-Grammar-File");
+    private static final Attributes.Name FILE_EXTENSIONS = new Attributes.Name("Antlr-File-Extensions");
+
+    private final File configFile;
+    private final String version;
+
+    public GrammarPackager(File configFile, String version) {
+        this.configFile = configFile.getAbsoluteFile();
+        this.version = version;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("Usage: GrammarPackager <plugin configuration file> <jar file> <version>");
+            System.exit(1);
+        }
+        new GrammarPackager(new File(args[0]), args[2]).packageGrammars(new File(args[1]));
+    }
+
+    /**
+     * Generates and compiles the lexers and parsers in a temporary directory, which is deleted afterwards. Grammars
+     * that already refer to a parser jar are left out.
+     *
+     * @throws IOException if the lexer and parser of a grammar could not be generated and compiled
+     */
+    public void packageGrammars(File jarFile) throws IOException {
+        ConfigurationProvider configurationProvider = new ConfigurationProvider();
+        configurationProvider.loadConfigurationFrom(configFile);
+
+        Manifest manifest = new Manifest();
+        Map<String, Path> classFiles = new TreeMap<>();
+        Path generatedFilesDirectory = Files.createTempDirectory("jqassistant-antlr-packager");
+        try {
+            for (GrammarConfiguration grammarConfiguration : configurationProvider.getGrammarConfigurations()) {
+                if (grammarConfiguration.grammarFile() == null) continue;
+                packageGrammar(grammarConfiguration, generatedFilesDirectory.toFile(), manifest, classFiles);
+            }
+            writeJar(jarFile, manifest, classFiles);
+        } finally {
+            Utils.deleteRecursively(generatedFilesDirectory);
+        }
+        LOGGER.info("Packaged lexers and parsers of grammars {} into: {}", manifest.getMainAttributes().get(GRAMMARS), jarFile);
+    }
+
+    private void packageGrammar(GrammarConfiguration grammarConfiguration, File generatedFilesDirectory,
+                                Manifest manifest, Map<String, Path> classFiles) throws IOException {
+        String grammarName = grammarConfiguration.getGrammarName();
+        AntlrTool antlrTool = new AntlrTool(grammarConfiguration, configFile, generatedFilesDirectory);
+        String fingerprint = antlrTool.getGrammarFingerprint();
+        String fileExtension = grammarConfiguration.getFileExtension();
+        String grammarEntry = grammarName + "-" + fingerprint + "/";
+
+        // the same grammar may be configured for several file extensions
+        Attributes grammarAttributes = manifest.getEntries().get(grammarEntry);
+        if (grammarAttributes != null) {
+            grammarAttributes.put(FILE_EXTENSIONS, grammarAttributes.getValue(FILE_EXTENSIONS) + " " + fileExtension);
+            return;
+        }
+
+        Path lexerAndParser = Path.of(antlrTool.getLexerAndParser());
+        if (!Files.isRegularFile(lexerAndParser.resolve(grammarName + "Lexer.class"))
+                || !Files.isRegularFile(lexerAndParser.resolve(grammarName + "Parser.class"))) {
+            throw new IOException("Could not generate and compile lexer and parser of grammar " + grammarName
+                    + ": " + grammarConfiguration.getGrammarLocation());
+        }
+        // the directory itself is an entry, so the manifest section refers to an entry of the jar
+        classFiles.put(grammarEntry, null);
+        try (Stream<Path> files = Files.walk(lexerAndParser)) {
+            for (Path classFile : files.filter(file -> file.toString().endsWith(".class")).collect(Collectors.toList())) {
+                String entryName = lexerAndParser.relativize(classFile).toString().replace(File.separatorChar, '/');
+                classFiles.put(grammarEntry + entryName, classFile);
+            }
+        }
+
+        grammarAttributes = new Attributes();
+        grammarAttributes.put(GRAMMAR_NAME, grammarName);
+        grammarAttributes.put(GRAMMAR_FINGERPRINT, fingerprint);
+        grammarAttributes.put(GRAMMAR_FILE, grammarConfiguration.grammarFile());
+        grammarAttributes.put(FILE_EXTENSIONS, fileExtension);
+        manifest.getEntries().put(grammarEntry, grammarAttributes);
+    }
+
+    private void writeJar(File jarFile, Manifest manifest, Map<String, Path> classFiles) throws IOException {
+        Attributes mainAttributes = manifest.getMainAttributes();
+        mainAttributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        mainAttributes.put(Attributes.Name.IMPLEMENTATION_VERSION, version);
+        mainAttributes.put(ANTLR_VERSION, Tool.VERSION);
+        mainAttributes.put(GRAMMARS, manifest.getEntries().values().stream()
+                .map(grammarAttributes -> grammarAttributes.getValue(GRAMMAR_NAME))
+                .distinct()
+                .sorted()
+                .collect(Collectors.joining(" ")));
+
+        Files.createDirectories(jarFile.getAbsoluteFile().getParentFile().toPath());
+        try (JarOutputStream jar = new JarOutputStream(Files.newOutputStream(jarFile.toPath()), manifest)) {
+            for (Map.Entry<String, Path> classFile : classFiles.entrySet()) {
+                jar.putNextEntry(new JarEntry(classFile.getKey()));
+                if (classFile.getValue() != null) {
+                    Files.copy(classFile.getValue(), jar);
+                }
+                jar.closeEntry();
+            }
+        }
+    }
+
+    /**
+     * Finds the grammar in the jar, telling grammars of the same name apart by the file extensions they have been
+     * packaged for.
+     *
+     * @throws IOException if the jar does not contain the grammar
+     */
+    static PackagedGrammar findGrammar(File parserJar, String grammarName, String fileExtension) throws IOException {
+        Manifest manifest;
+        try (JarFile jar = new JarFile(parserJar)) {
+            manifest = jar.getManifest();
+        }
+        List<PackagedGrammar> grammars = new ArrayList<>();
+        Map<String, Attributes> sections = manifest != null ? manifest.getEntries() : Map.of();
+        for (Map.Entry<String, Attributes> section : sections.entrySet()) {
+            Attributes grammarAttributes = section.getValue();
+            if (!grammarName.equals(grammarAttributes.getValue(GRAMMAR_NAME))) continue;
+
+            PackagedGrammar grammar = new PackagedGrammar(section.getKey(), grammarAttributes.getValue(GRAMMAR_FINGERPRINT));
+            if (Arrays.asList(grammarAttributes.getValue(FILE_EXTENSIONS).split(" ")).contains(fileExtension)) return grammar;
+            grammars.add(grammar);
+        }
+        if (grammars.isEmpty()) {
+            throw new IOException("Parser jar " + parserJar + " does not contain grammar " + grammarName);
+        }
+        if (grammars.size() > 1) {
+            throw new IOException("Parser jar " + parserJar + " contains several grammars named " + grammarName
+                    + ", none of them for files " + fileExtension);
+        }
+        return grammars.get(0);
+    }
+
+    /**
+     * The lexer and parser of a grammar in a parser jar.
+     */
+    static class PackagedGrammar {
+
+        private final String entry;
+        private final String fingerprint;
+
+        private PackagedGrammar(String entry, String fingerprint) {
+            this.entry = entry;
+            this.fingerprint = fingerprint;
+        }
+
+        /**
+         * @return the directory of the jar holding the classes of the lexer and parser
+         */
+        String getEntry() {
+            return entry;
+        }
+
+        /**
+         * @return the fingerprint of the grammar file the lexer and parser have been built from
+         */
+        String getFingerprint() {
+            return fingerprint;
+        }
+    }
+}
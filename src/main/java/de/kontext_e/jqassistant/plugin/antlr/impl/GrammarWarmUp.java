@@ -0,0 +1,116 @@
+package de.kontext_e.jqassistant.plugin.antlr.impl;
+
+import de.kontext_e.jqassistant.plugin.antlr.api.config.GrammarConfiguration;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Prepares the parser runtimes of several grammars at the same time on a pool of threads, so generating, compiling
+ * and loading their lexers and parsers takes as long as the slowest grammar instead of all of them together. The
+ * first grammar that can not be prepared stops the warm-up, the grammars still being prepared are abandoned. Parser
+ * runtimes that are ready but never handed over, because the warm-up has been stopped before or while they were
+ * prepared, are released by the warm-up itself.
+ */
+class GrammarWarmUp {
+
+    private final ExecutorService executor;
+    private final CompletionService<ParserRuntime> completionService;
+    private final Map<Future<ParserRuntime>, GrammarConfiguration> preparations = new HashMap<>();
+    private final Consumer<ParserRuntime> release;
+
+    /**
+     * The parser runtimes that are ready but not handed over yet, guarded by themselves.
+     */
+    private final Set<ParserRuntime> unclaimedParserRuntimes = new HashSet<>();
+    private boolean stopped;
+
+    /**
+     * @param release releases a parser runtime that is not handed over
+     */
+    GrammarWarmUp(int threads, Consumer<ParserRuntime> release) {
+        this.executor = Executors.newFixedThreadPool(threads, new DaemonThreadFactory("jqassistant-antlr-warm-up-"));
+        this.completionService = new ExecutorCompletionService<>(executor);
+        this.release = release;
+    }
+
+    void prepare(GrammarConfiguration grammarConfiguration, Callable<ParserRuntime> preparation) {
+        preparations.put(completionService.submit(() -> keepUnlessStopped(preparation.call())), grammarConfiguration);
+    }
+
+    /**
+     * A preparation may still finish after the warm-up has been stopped, as not every step of it can be interrupted,
+     * so its parser runtime is released right away instead of being left to the garbage collector along with its
+     * class loader.
+     */
+    private ParserRuntime keepUnlessStopped(ParserRuntime parserRuntime) {
+        synchronized (unclaimedParserRuntimes) {
+            if (!stopped) {
+                unclaimedParserRuntimes.add(parserRuntime);
+                return parserRuntime;
+            }
+        }
+        release.accept(parserRuntime);
+        return null;
+    }
+
+    /**
+     * Waits for the grammars in the order in which they are ready and hands over their parser runtimes, so those
+     * prepared before a broken grammar is found are still released by the caller. Those that are ready afterwards are
+     * released by the warm-up.
+     *
+     * @throws IllegalStateException for the first grammar that could not be prepared
+     */
+    void awaitAll(BiConsumer<GrammarConfiguration, ParserRuntime> preparedGrammars) {
+        try {
+            for (int i = 0; i < preparations.size(); i++) {
+                Future<ParserRuntime> preparation = completionService.take();
+                GrammarConfiguration grammarConfiguration = preparations.get(preparation);
+                ParserRuntime parserRuntime = getParserRuntime(preparation, grammarConfiguration);
+                synchronized (unclaimedParserRuntimes) {
+                    unclaimedParserRuntimes.remove(parserRuntime);
+                }
+                preparedGrammars.accept(grammarConfiguration, parserRuntime);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while preparing grammars", e);
+        } finally {
+            stop();
+        }
+    }
+
+    private void stop() {
+        List<ParserRuntime> unclaimed;
+        synchronized (unclaimedParserRuntimes) {
+            stopped = true;
+            unclaimed = new ArrayList<>(unclaimedParserRuntimes);
+            unclaimedParserRuntimes.clear();
+        }
+        executor.shutdownNow();
+        unclaimed.forEach(release);
+    }
+
+    private static ParserRuntime getParserRuntime(Future<ParserRuntime> preparation, GrammarConfiguration grammarConfiguration)
+            throws InterruptedException {
+        try {
+            return preparation.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Could not prepare grammar " + grammarConfiguration.getGrammarName()
+                    + " from " + grammarConfiguration.getGrammarLocation() + ": " + e.getCause(), e.getCause());
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package de.kontext_e.jqassistant.plugin.antlr.impl;
+
+import org.antlr.v4.Tool;
+import org.antlr.v4.tool.Grammar;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Generates and compiles lexer and parser without writing any files: the output of the ANTLR tool and of the java
+ * compiler is kept in memory and the classes are defined directly from the compiled bytes.
+ */
+class InMemoryCompiler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(InMemoryCompiler.class);
+
+    private static final String JAVA_FILE_EXTENSION = ".java";
+
+    private long generationNanos;
+    private long compilationNanos;
+
+    ClassLoader generateAndCompile(File grammarFile) throws IOException {
+        long generationStart = System.nanoTime();
+        Map<String, String> sources = generateLexerAndParser(grammarFile);
+        long compilationStart = System.nanoTime();
+        generationNanos += compilationStart - generationStart;
+        Map<String, ByteArrayOutputStream> classes = compileJavaSources(sources);
+        compilationNanos += System.nanoTime() - compilationStart;
+        Map<String, byte[]> classBytes = new HashMap<>();
+        classes.forEach((className, bytes) -> classBytes.put(className, bytes.toByteArray()));
+        return new ByteArrayClassLoader(classBytes, getClass().getClassLoader());
+    }
+
+    long getGenerationNanos() {
+        return generationNanos;
+    }
+
+    long getCompilationNanos() {
+        return compilationNanos;
+    }
+
+    private static Map<String, String> generateLexerAndParser(File grammarFile) throws IOException {
+        InMemoryTool tool = new InMemoryTool(grammarFile);
+        AntlrTool.processGrammars(tool);
+        if (tool.getNumErrors() > 0) {
+            throw new IOException("Could not generate lexer and parser for grammar: " + grammarFile);
+        }
+        return tool.getJavaSources();
+    }
+
+    private static Map<String, ByteArrayOutputStream> compileJavaSources(Map<String, String> sources) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IOException("No java compiler available, lexer and parser can not be compiled");
+        }
+
+        List<JavaFileObject> compilationUnits = new ArrayList<>();
+        sources.forEach((className, source) -> compilationUnits.add(new SourceFileObject(className, source)));
+
+        Map<String, ByteArrayOutputStream> classes = new HashMap<>();
+        StringWriter compilerOutput = new StringWriter();
+        try (InMemoryFileManager fileManager = new InMemoryFileManager(compiler.getStandardFileManager(null, null, null), classes)) {
+            Boolean compiled = compiler.getTask(compilerOutput, fileManager, null, AntlrTool.getCompilerOptions(), null, compilationUnits).call();
+            if (!Boolean.TRUE.equals(compiled)) {
+                throw new IOException("Compilation failed: " + compilerOutput);
+            }
+        }
+
+        if (!compilerOutput.toString().isEmpty()) {
+            LOGGER.warn("Compiled with warnings: {}", compilerOutput);
+        }
+        return classes;
+    }
+
+    /**
+     * Collects the generated files instead of writing them into the output directory.
+     */
+    private static class InMemoryTool extends Tool {
+
+        private final Map<String, StringWriter> generatedFiles = new HashMap<>();
+
+        InMemoryTool(File grammarFile) {
+            super(new String[]{grammarFile.getAbsolutePath()});
+        }
+
+        @Override
+        public Writer getOutputFileWriter(Grammar g, String fileName) {
+            StringWriter writer = new StringWriter();
+            generatedFiles.put(fileName, writer);
+            return writer;
+        }
+
+        Map<String, String> getJavaSources() {
+            Map<String, String> javaSources = new HashMap<>();
+            generatedFiles.forEach((fileName, content) -> {
+                if (fileName.endsWith(JAVA_FILE_EXTENSION)) {
+                    String className = fileName.substring(0, fileName.length() - JAVA_FILE_EXTENSION.length());
+                    javaSources.put(className, content.toString());
+                }
+            });
+            return javaSources;
+        }
+    }
+
+    private static class SourceFileObject extends SimpleJavaFileObject {
+
+        private final String source;
+
+        SourceFileObject(String className, String source) {
+            super(URI.create("string:///" + className.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+            this.source = source;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return source;
+        }
+    }
+
+    private static class InMemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+
+        private final Map<String, ByteArrayOutputStream> classes;
+
+        InMemoryFileManager(StandardJavaFileManager fileManager, Map<String, ByteArrayOutputStream> classes) {
+            super(fileManager);
+            this.classes = classes;
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(JavaFileManager.Location location, String className,
+                                                   JavaFileObject.Kind kind, FileObject sibling) {
+            URI uri = URI.create("bytes:///" + className.replace('.', '/') + kind.extension);
+            return new SimpleJavaFileObject(uri, kind) {
+                @Override
+                public OutputStream openOutputStream() {
+                    ByteArrayOutputStream classBytes = new ByteArrayOutputStream();
+                    classes.put(className, classBytes);
+                    return classBytes;
+                }
+            };
+        }
+    }
+}
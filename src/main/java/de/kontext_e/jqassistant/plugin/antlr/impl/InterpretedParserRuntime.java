@@ -0,0 +1,150 @@
+package de.kontext_e.jqassistant.plugin.antlr.impl;
+
+import org.antlr.runtime.RecognitionException;
+import org.antlr.v4.Tool;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.LexerInterpreter;
+import org.antlr.v4.runtime.Parser;
+import org.antlr.v4.runtime.ParserInterpreter;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.TokenStream;
+import org.antlr.v4.runtime.UnbufferedTokenStream;
+import org.antlr.v4.runtime.atn.LexerATNSimulator;
+import org.antlr.v4.runtime.atn.ParserATNSimulator;
+import org.antlr.v4.runtime.atn.PredictionContextCache;
+import org.antlr.v4.runtime.dfa.DFA;
+import org.antlr.v4.tool.Grammar;
+import org.antlr.v4.tool.LexerGrammar;
+import org.antlr.v4.tool.Rule;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.function.Consumer;
+
+/**
+ * Parses files by interpreting the grammar with ANTLR's lexer and parser interpreters, so neither code generation nor
+ * a java compiler is needed. The DFA caches are shared by all files, like the static caches of generated parsers.
+ */
+class InterpretedParserRuntime implements ParserRuntime {
+
+    private final Grammar parserGrammar;
+    private final LexerGrammar lexerGrammar;
+    private final int grammarRootRuleIndex;
+
+    private final DFA[] lexerDecisionToDFA;
+    private final DFA[] parserDecisionToDFA;
+    private final PredictionContextCache sharedContextCache = new PredictionContextCache();
+    private final boolean twoStageParsing;
+    private final boolean profiling;
+
+    InterpretedParserRuntime(File grammarFile, String grammarName, String grammarRoot, boolean twoStageParsing,
+                             boolean profiling)
+            throws IOException, NoSuchMethodException {
+        this.twoStageParsing = twoStageParsing;
+        this.profiling = profiling;
+        Tool tool = new Tool();
+        tool.libDirectory = grammarFile.getParentFile().getAbsolutePath();
+
+        Grammar grammar = tool.loadGrammar(grammarFile.getAbsolutePath());
+        if (grammar != null && grammar.isParser()) {
+            // a separate parser grammar is interpreted with the lexer grammar next to it, as in compiled mode
+            File lexerGrammarFile = new File(grammarFile.getParentFile(), grammarName + "Lexer.g4");
+            LexerGrammar lexer = (LexerGrammar) tool.loadGrammar(lexerGrammarFile.getAbsolutePath());
+            this.lexerGrammar = lexer;
+            grammar = loadParserGrammar(grammarFile, lexer);
+        } else {
+            this.lexerGrammar = grammar != null ? grammar.implicitLexer : null;
+        }
+        if (grammar == null || lexerGrammar == null || tool.getNumErrors() > 0) {
+            throw new IOException("Could not load grammar for interpretation: " + grammarFile);
+        }
+        this.parserGrammar = grammar;
+
+        Rule rootRule = parserGrammar.getRule(grammarRoot);
+        if (rootRule == null) {
+            throw new NoSuchMethodException(grammarRoot);
+        }
+        this.grammarRootRuleIndex = rootRule.index;
+
+        this.lexerDecisionToDFA = createDecisionToDFA(lexerGrammar);
+        this.parserDecisionToDFA = createDecisionToDFA(parserGrammar);
+    }
+
+    private static Grammar loadParserGrammar(File grammarFile, LexerGrammar lexerGrammar) throws IOException {
+        try {
+            String grammarText = Files.readString(grammarFile.toPath());
+            return new Grammar(grammarFile.getAbsolutePath(), grammarText, lexerGrammar, null);
+        } catch (RecognitionException e) {
+            throw new IOException("Could not parse grammar: " + grammarFile, e);
+        }
+    }
+
+    private static DFA[] createDecisionToDFA(Grammar grammar) {
+        DFA[] decisionToDFA = new DFA[grammar.atn.getNumberOfDecisions()];
+        for (int i = 0; i < decisionToDFA.length; i++) {
+            decisionToDFA[i] = new DFA(grammar.atn.getDecisionState(i), i);
+        }
+        return decisionToDFA;
+    }
+
+    @Override
+    public ParseResult parse(CharStream input) {
+        CommonTokenStream tokenStream = new CommonTokenStream(createLexer(input));
+        long lexingStart = System.nanoTime();
+        // the tokens are read up front instead of on demand, so lexing and parsing are timed separately
+        tokenStream.fill();
+        long parsingStart = System.nanoTime();
+        ParserInterpreter parser = createParser(tokenStream);
+        ParserRuleContext rootContext = twoStageParsing
+                ? TwoStagePrediction.parse(parser, this::parseGrammarRootRule)
+                : parseGrammarRootRule(parser);
+        return new ParseResult(rootContext, parser.getRuleNames(), parser.getVocabulary())
+                .withStatistics(tokenStream.size(), parsingStart - lexingStart, System.nanoTime() - parsingStart)
+                .withProfile(ParseProfile.of(parser))
+                .withTwoStageFallback(twoStageParsing && TwoStagePrediction.fellBack(parser));
+    }
+
+    @Override
+    public ParseResult parseStreaming(CharStream input, Consumer<ParseResult> topLevelTrees) {
+        // two-stage parsing would have to rewind the token stream, which an unbuffered one can not do
+        LexerInterpreter lexer = createLexer(input);
+        UnbufferedTokenFactory tokenFactory = new UnbufferedTokenFactory();
+        lexer.setTokenFactory(tokenFactory);
+        ParserInterpreter parser = createParser(new UnbufferedTokenStream<>(lexer));
+        parser.setErrorHandler(new UnbufferedErrorStrategy());
+        TopLevelTreeListener topLevelTreeListener = new TopLevelTreeListener(parser.getRuleNames(), parser.getVocabulary(), topLevelTrees);
+        parser.addParseListener(topLevelTreeListener);
+        topLevelTreeListener.handOverRemainingTrees(parseGrammarRootRule(parser));
+        return new ParseResult(Collections.emptyList(), parser.getRuleNames(), parser.getVocabulary())
+                .withStatistics(tokenFactory.getTokenCount(), 0, 0)
+                .withProfile(ParseProfile.of(parser));
+    }
+
+    private LexerInterpreter createLexer(CharStream input) {
+        LexerInterpreter lexer = lexerGrammar.createLexerInterpreter(input);
+        lexer.setInterpreter(new LexerATNSimulator(lexer, lexerGrammar.atn, lexerDecisionToDFA, sharedContextCache));
+        return lexer;
+    }
+
+    private ParserInterpreter createParser(TokenStream tokenStream) {
+        ParserInterpreter parser = parserGrammar.createParserInterpreter(tokenStream);
+        parser.setInterpreter(new ParserATNSimulator(parser, parserGrammar.atn, parserDecisionToDFA, sharedContextCache));
+        if (profiling) {
+            // the profiling simulator takes over the shared DFA caches of the simulator it replaces
+            parser.setProfile(true);
+        }
+        return parser;
+    }
+
+    private ParserRuleContext parseGrammarRootRule(Parser parser) {
+        return ((ParserInterpreter) parser).parse(grammarRootRuleIndex);
+    }
+
+    @Override
+    public void close() {
+        // the grammars are garbage collected with this runtime
+    }
+}
@@ -0,0 +1,126 @@
+package de.kontext_e.jqassistant.plugin.antlr.impl;
+
+import org.antlr.v4.runtime.Parser;
+import org.antlr.v4.runtime.atn.DecisionInfo;
+import org.antlr.v4.runtime.atn.ParseInfo;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The statistics collected by ANTLR's profiling simulator while parsing a file, summed up over the decisions of each
+ * grammar rule, so the rules that are expensive to predict can be found.
+ */
+class ParseProfile {
+
+    private final List<RuleStatistics> ruleStatistics;
+    private final long dfaStates;
+
+    private ParseProfile(List<RuleStatistics> ruleStatistics, long dfaStates) {
+        this.ruleStatistics = ruleStatistics;
+        this.dfaStates = dfaStates;
+    }
+
+    /**
+     * @return the profile of the last parse, or null if profiling was not enabled for the parser
+     */
+    static ParseProfile of(Parser parser) {
+        ParseInfo parseInfo = parser.getParseInfo();
+        if (parseInfo == null) return null;
+
+        Map<Integer, RuleStatistics> statisticsByRule = new LinkedHashMap<>();
+        for (DecisionInfo decisionInfo : parseInfo.getDecisionInfo()) {
+            if (decisionInfo.invocations == 0) continue;
+
+            int ruleIndex = parser.getATN().getDecisionState(decisionInfo.decision).ruleIndex;
+            statisticsByRule.computeIfAbsent(ruleIndex, index -> new RuleStatistics(parser.getRuleNames()[index]))
+                    .add(decisionInfo);
+        }
+        return new ParseProfile(new ArrayList<>(statisticsByRule.values()), parseInfo.getDFASize());
+    }
+
+    List<RuleStatistics> getRuleStatistics() {
+        return ruleStatistics;
+    }
+
+    /**
+     * @return the number of DFA states cached for the grammar so far, which are shared by all files parsed with it
+     */
+    long getDfaStates() {
+        return dfaStates;
+    }
+
+    long getLlFallbacks() {
+        return ruleStatistics.stream().mapToLong(RuleStatistics::getLlFallbacks).sum();
+    }
+
+    long getAmbiguities() {
+        return ruleStatistics.stream().mapToLong(RuleStatistics::getAmbiguities).sum();
+    }
+
+    static class RuleStatistics {
+
+        private final String rule;
+        private long invocations;
+        private long predictionNanos;
+        private long sllLookahead;
+        private long llLookahead;
+        private long llFallbacks;
+        private long ambiguities;
+        private long contextSensitivities;
+        private long errors;
+
+        private RuleStatistics(String rule) {
+            this.rule = rule;
+        }
+
+        private void add(DecisionInfo decisionInfo) {
+            invocations += decisionInfo.invocations;
+            predictionNanos += decisionInfo.timeInPrediction;
+            sllLookahead += decisionInfo.SLL_TotalLook;
+            llLookahead += decisionInfo.LL_TotalLook;
+            llFallbacks += decisionInfo.LL_Fallback;
+            ambiguities += decisionInfo.ambiguities.size();
+            contextSensitivities += decisionInfo.contextSensitivities.size();
+            errors += decisionInfo.errors.size();
+        }
+
+        String getRule() {
+            return rule;
+        }
+
+        long getInvocations() {
+            return invocations;
+        }
+
+        long getPredictionNanos() {
+            return predictionNanos;
+        }
+
+        long getSllLookahead() {
+            return sllLookahead;
+        }
+
+        long getLlLookahead() {
+            return llLookahead;
+        }
+
+        long getLlFallbacks() {
+            return llFallbacks;
+        }
+
+        long getAmbiguities() {
+            return ambiguities;
+        }
+
+        long getContextSensitivities() {
+            return contextSensitivities;
+        }
+
+        long getErrors() {
+            return errors;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package de.kontext_e.jqassistant.plugin.antlr.impl;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Vocabulary;
+import org.antlr.v4.runtime.VocabularyImpl;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+import java.util.Collections;
+import java.util.List;
+
+class ParseResult {
+
+    private static final ParseResult EMPTY = new ParseResult(Collections.emptyList(), new String[0], VocabularyImpl.EMPTY_VOCABULARY);
+
+    private final List<ParseTree> parseTrees;
+    private final String[] ruleNames;
+    private final Vocabulary vocabulary;
+    private int tokenCount;
+    private long lexingNanos;
+    private long parsingNanos;
+    private ParseProfile profile;
+    private boolean twoStageFallback;
+
+    ParseResult(ParserRuleContext rootContext, String[] ruleNames, Vocabulary vocabulary) {
+        this(rootContext == null || rootContext.children == null ? Collections.emptyList() : rootContext.children,
+                ruleNames, vocabulary);
+    }
+
+    /**
+     * @param parseTrees children of the grammar root, e.g. a single one handed over while a file is parsed streaming
+     */
+    ParseResult(List<ParseTree> parseTrees, String[] ruleNames, Vocabulary vocabulary) {
+        this.parseTrees = parseTrees;
+        this.ruleNames = ruleNames;
+        this.vocabulary = vocabulary;
+    }
+
+    /**
+     * Records how long reading the tokens of the file and parsing them took.
+     */
+    ParseResult withStatistics(int tokenCount, long lexingNanos, long parsingNanos) {
+        this.tokenCount = tokenCount;
+        this.lexingNanos = lexingNanos;
+        this.parsingNanos = parsingNanos;
+        return this;
+    }
+
+    ParseResult withProfile(ParseProfile profile) {
+        this.profile = profile;
+        return this;
+    }
+
+    ParseResult withTwoStageFallback(boolean twoStageFallback) {
+        this.twoStageFallback = twoStageFallback;
+        return this;
+    }
+
+    static ParseResult empty() {
+        return EMPTY;
+    }
+
+    List<ParseTree> getParseTrees() {
+        return parseTrees;
+    }
+
+    String[] getRuleNames() {
+        return ruleNames;
+    }
+
+    Vocabulary getVocabulary() {
+        return vocabulary;
+    }
+
+    int getTokenCount() {
+        return tokenCount;
+    }
+
+    long getLexingNanos() {
+        return lexingNanos;
+    }
+
+    long getParsingNanos() {
+        return parsingNanos;
+    }
+
+    /**
+     * @return the prediction statistics, or null if the grammar is not profiled
+     */
+    ParseProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * @return whether parsing in two stages had to fall back to LL prediction
+     */
+    boolean isTwoStageFallback() {
+        return twoStageFallback;
+    }
+}
@@ -0,0 +1,243 @@
+package de.kontext_e.jqassistant.plugin.antlr.impl;
+
+import de.kontext_e.jqassistant.plugin.antlr.api.config.NodeTextMode;
+import org.antlr.v4.runtime.InterpreterRuleContext;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.RuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static de.kontext_e.jqassistant.plugin.antlr.impl.Utils.capitalizeFirstLetter;
+
+class ParseTreeFlattener {
+
+    private static final Pattern CONTEXT_CLASS_NAME_PATTERN = Pattern.compile("\\$(.*?)Context");
+
+    /**
+     * The label of a generated context class only depends on its name, so it is resolved once per class.
+     */
+    private static final ClassValue<String> CLASS_LABELS = new ClassValue<>() {
+        @Override
+        protected String computeValue(Class<?> type) {
+            Matcher matcher = CONTEXT_CLASS_NAME_PATTERN.matcher(type.getName());
+            return matcher.find() ? matcher.group(1) : "TerminalNode";
+        }
+    };
+
+    private final boolean createEmptyNodes;
+    private final NodeTextMode ruleNodeTextMode;
+    private final int ruleNodeTextMaxLength;
+    private final boolean internTokens;
+
+    ParseTreeFlattener(boolean createEmptyNodes, NodeTextMode ruleNodeTextMode, int ruleNodeTextMaxLength,
+                       boolean internTokens) {
+        this.createEmptyNodes = createEmptyNodes;
+        this.ruleNodeTextMode = ruleNodeTextMode;
+        this.ruleNodeTextMaxLength = ruleNodeTextMaxLength;
+        this.internTokens = internTokens;
+    }
+
+    FlatParseTree flatten(ParseResult parseResult, TreePruning pruning) {
+        FlatParseTree flatParseTree = createFlatParseTree();
+        flattenInto(flatParseTree, parseResult, pruning, pruning.resolve(parseResult.getRuleNames(), parseResult.getVocabulary()));
+        complete(flatParseTree);
+        return flatParseTree;
+    }
+
+    FlatParseTree createFlatParseTree() {
+        FlatParseTree flatParseTree = new FlatParseTree();
+        flatParseTree.setRuleNodeText(ruleNodeTextMode, ruleNodeTextMaxLength);
+        return flatParseTree;
+    }
+
+    /**
+     * Appends the parse trees to the flat parse tree, which may already contain the trees of other children of the
+     * grammar root.
+     *
+     * @param rules the pruning resolved for the grammar of the parse result, see {@link TreePruning#resolve}
+     */
+    void flattenInto(FlatParseTree flatParseTree, ParseResult parseResult, TreePruning pruning, TreePruning.Rules rules) {
+        String[] ruleNames = parseResult.getRuleNames();
+        String[] ruleLabels = new String[ruleNames.length];
+        if (internTokens) {
+            flatParseTree.internTokens(parseResult.getVocabulary());
+        }
+        TreeWalk walk = new TreeWalk();
+        for (ParseTree parseTree : parseResult.getParseTrees()) {
+            flatten(flatParseTree, parseTree, ruleNames, ruleLabels, pruning, rules, walk);
+        }
+    }
+
+    void complete(FlatParseTree flatParseTree) {
+        // whether a node is blank is only known once its terminals have been visited
+        if (!createEmptyNodes) {
+            flatParseTree.removeBlankNodes();
+        }
+    }
+
+    /**
+     * Walks the tree in pre-order without recursion, so deeply nested input does not overflow the stack of the thread.
+     */
+    private void flatten(FlatParseTree flatParseTree, ParseTree parseTree, String[] ruleNames, String[] ruleLabels,
+                         TreePruning pruning, TreePruning.Rules rules, TreeWalk walk) {
+        enter(flatParseTree, FlatParseTree.NO_PARENT, false, parseTree, ruleNames, ruleLabels, pruning, rules, walk);
+        while (!walk.isEmpty()) {
+            ParseTree next = walk.nextChild();
+            if (next == null) {
+                int node = walk.pop();
+                if (node != FlatParseTree.NO_PARENT) {
+                    flatParseTree.closeNode(node);
+                }
+                continue;
+            }
+            enter(flatParseTree, walk.getNode(), walk.isTextOnly(), next, ruleNames, ruleLabels, pruning, rules, walk);
+        }
+    }
+
+    /**
+     * Adds the node of the parse tree and pushes it onto the walk, if it has children to be visited.
+     *
+     * @param textOnly whether the parse tree is part of a pruned one, so only its text is kept
+     */
+    private void enter(FlatParseTree flatParseTree, int parent, boolean textOnly, ParseTree parseTree, String[] ruleNames,
+                       String[] ruleLabels, TreePruning pruning, TreePruning.Rules rules, TreeWalk walk) {
+        if (parseTree instanceof TerminalNode) {
+            if (textOnly || rules.isExcludedToken(((TerminalNode) parseTree).getSymbol().getType())) {
+                flatParseTree.appendText(parseTree.getText());
+            } else {
+                int node = flatParseTree.addTerminalNode(parent, getLabel(parseTree, ruleNames, ruleLabels), parseTree.getText());
+                Token token = ((TerminalNode) parseTree).getSymbol();
+                setSourcePosition(flatParseTree, node, token, token);
+                if (flatParseTree.hasInternedTokens()) {
+                    flatParseTree.setTokenType(node, token.getType());
+                }
+            }
+            return;
+        }
+
+        if (textOnly || rules.isExcludedRule(((RuleContext) parseTree).getRuleIndex())) {
+            walk.push(parseTree, FlatParseTree.NO_PARENT, true);
+            return;
+        }
+
+        String label = getLabel(parseTree, ruleNames, ruleLabels);
+        if (pruning.collapsesSingleChildRules()) {
+            // the only child spans the same text, so it takes the place of its parent and carries its label along
+            while (!rules.isLeafRule(((RuleContext) parseTree).getRuleIndex()) && isSingleIncludedRule(parseTree, rules)) {
+                parseTree = parseTree.getChild(0);
+                label = addLabel(label, getLabel(parseTree, ruleNames, ruleLabels));
+            }
+        }
+
+        int node = flatParseTree.addRuleNode(parent, label);
+        ParserRuleContext ruleContext = (ParserRuleContext) parseTree;
+        setSourcePosition(flatParseTree, node, ruleContext.getStart(), ruleContext.getStop());
+        walk.push(parseTree, node, rules.isLeafRule(((RuleContext) parseTree).getRuleIndex()));
+    }
+
+    /**
+     * @param stop the last token of the node, which precedes the first one if the node is empty
+     */
+    private static void setSourcePosition(FlatParseTree flatParseTree, int node, Token start, Token stop) {
+        if (!flatParseTree.hasSourcePositions() || start == null || start.getStartIndex() < 0) return;
+
+        int end = stop == null ? start.getStartIndex() : Math.max(start.getStartIndex(), stop.getStopIndex() + 1);
+        flatParseTree.setSourcePosition(node, start.getStartIndex(), end, start.getLine(), start.getCharPositionInLine());
+    }
+
+    private static boolean isSingleIncludedRule(ParseTree parseTree, TreePruning.Rules rules) {
+        if (parseTree.getChildCount() != 1 || !(parseTree.getChild(0) instanceof RuleContext)) return false;
+        return !rules.isExcludedRule(((RuleContext) parseTree.getChild(0)).getRuleIndex());
+    }
+
+    /**
+     * Several labels are joined by colons, as they are inserted into the Cypher statements creating the nodes.
+     */
+    private static String addLabel(String labels, String label) {
+        if ((":" + labels + ":").contains(":" + label + ":")) return labels;
+        return labels + ":" + label;
+    }
+
+    private static String getLabel(ParseTree parseTree, String[] ruleNames, String[] ruleLabels) {
+        if (parseTree instanceof InterpreterRuleContext) {
+            // interpreted rules share one context class, their label is derived from the rule name like a class name
+            int ruleIndex = ((InterpreterRuleContext) parseTree).getRuleIndex();
+            String label = ruleLabels[ruleIndex];
+            if (label == null) {
+                label = capitalizeFirstLetter(ruleNames[ruleIndex]);
+                ruleLabels[ruleIndex] = label;
+            }
+            return label;
+        }
+        // compiled parsers need the class name, as labeled alternatives create contexts of their own for one rule
+        return CLASS_LABELS.get(parseTree.getClass());
+    }
+
+    /**
+     * The rule contexts from the root of the walked tree down to the current one, each with the index of its node
+     * and of its next child to visit. The arrays only grow with the depth of the tree and are reused for all trees
+     * of a parse result.
+     */
+    private static class TreeWalk {
+
+        private static final int INITIAL_DEPTH = 64;
+
+        private ParseTree[] trees = new ParseTree[INITIAL_DEPTH];
+        private int[] nodes = new int[INITIAL_DEPTH];
+        private int[] nextChildren = new int[INITIAL_DEPTH];
+        private final BitSet textOnly = new BitSet();
+        private int depth;
+
+        void push(ParseTree parseTree, int node, boolean textOnly) {
+            if (depth == trees.length) {
+                int capacity = depth * 2;
+                trees = Arrays.copyOf(trees, capacity);
+                nodes = Arrays.copyOf(nodes, capacity);
+                nextChildren = Arrays.copyOf(nextChildren, capacity);
+            }
+            trees[depth] = parseTree;
+            nodes[depth] = node;
+            nextChildren[depth] = 0;
+            this.textOnly.set(depth, textOnly);
+            depth++;
+        }
+
+        boolean isEmpty() {
+            return depth == 0;
+        }
+
+        /**
+         * @return the next child of the current rule context, or null if all of them have been visited
+         */
+        ParseTree nextChild() {
+            ParseTree parseTree = trees[depth - 1];
+            int child = nextChildren[depth - 1];
+            if (child == parseTree.getChildCount()) return null;
+            nextChildren[depth - 1] = child + 1;
+            return parseTree.getChild(child);
+        }
+
+        int getNode() {
+            return nodes[depth - 1];
+        }
+
+        boolean isTextOnly() {
+            return textOnly.get(depth - 1);
+        }
+
+        /**
+         * @return the node of the rule context left, or {@link FlatParseTree#NO_PARENT} if it has none
+         */
+        int pop() {
+            depth--;
+            trees[depth] = null;
+            return nodes[depth];
+        }
+    }
+}
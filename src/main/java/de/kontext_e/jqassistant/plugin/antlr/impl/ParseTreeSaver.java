@@ -1,58 +1,157 @@
 package de.kontext_e.jqassistant.plugin.antlr.impl;
 
 import com.buschmais.jqassistant.core.store.api.Store;
-import de.kontext_e.jqassistant.plugin.antlr.api.model.AntlrDescriptor;
-import de.kontext_e.jqassistant.plugin.antlr.api.model.NodeDescriptor;
+import de.kontext_e.jqassistant.plugin.antlr.api.config.WriterMode;
+import de.kontext_e.jqassistant.plugin.antlr.api.model.RuleProfileDescriptor;
 import de.kontext_e.jqassistant.plugin.antlr.api.model.ScannedFileDescriptor;
-import org.antlr.v4.runtime.tree.ParseTree;
 
-import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 public class ParseTreeSaver {
 
     private final Store store;
-    private final boolean createEmptyNodes;
+    private final ParseTreeFlattener parseTreeFlattener;
+    private final ParseTreeWriter parseTreeWriter;
+    private final int streamingChunkSize;
 
-    public ParseTreeSaver(Store store, boolean createEmptyNodes) {
+    public ParseTreeSaver(Store store, ConfigurationProvider configurationProvider) {
         this.store = store;
-        this.createEmptyNodes = createEmptyNodes;
+        this.parseTreeFlattener = new ParseTreeFlattener(configurationProvider.getCreateEmptyNodes(),
+                configurationProvider.getRuleNodeTextMode(), configurationProvider.getRuleNodeTextMaxLength(),
+                configurationProvider.getInternTokens());
+        // the token nodes are shared by all files of the scan
+        TokenCache tokenCache = configurationProvider.getInternTokens()
+                ? new TokenCache(store, configurationProvider.getTokenCacheSize())
+                : null;
+        this.parseTreeWriter = configurationProvider.getWriterMode() == WriterMode.BULK
+                ? new BulkTreeWriter(store, configurationProvider.getBulkChunkSize(), tokenCache)
+                : new DescriptorTreeWriter(store, tokenCache);
+        this.streamingChunkSize = configurationProvider.getBulkChunkSize();
     }
 
-    void saveParseTreesToNeo4J(List<ParseTree> parseTrees, ScannedFileDescriptor rootNode) {
-        for (ParseTree parseTree : parseTrees) {
-            saveParseTreeToNeo4J(rootNode, parseTree);
+    /**
+     * Flattening does not touch the store, so it may be done on any thread.
+     */
+    FlatParseTree flatten(ParseResult parseResult, TreePruning pruning, FileMetrics metrics) {
+        long start = System.nanoTime();
+        FlatParseTree flatParseTree = parseTreeFlattener.flatten(parseResult, pruning);
+        metrics.addTime(ScanMetrics.Phase.FLATTENING, System.nanoTime() - start);
+        return flatParseTree;
+    }
+
+    /**
+     * Stores the whole tree of a file below the scanned file, which takes the text and the position of the grammar
+     * root.
+     */
+    void saveParseTreesToNeo4J(FlatParseTree flatParseTree, ScannedFileDescriptor rootNode, FileMetrics metrics) {
+        writeTrees(flatParseTree, rootNode, metrics);
+        rootNode.setText(flatParseTree.getStoredRootText());
+        if (flatParseTree.hasRootSourcePosition()) {
+            rootNode.setStartOffset(flatParseTree.getRootSourceStart());
+            rootNode.setEndOffset(flatParseTree.getRootSourceEnd());
+            rootNode.setLine(flatParseTree.getRootLine());
+            rootNode.setColumn(flatParseTree.getRootColumn());
         }
     }
 
-    private void saveParseTreeToNeo4J(AntlrDescriptor parent, ParseTree parseTree) {
-        if (parseTree.getText().isBlank() && !createEmptyNodes) return;
+    private void writeTrees(FlatParseTree flatParseTree, ScannedFileDescriptor rootNode, FileMetrics metrics) {
+        parseTreeWriter.write(flatParseTree, rootNode, metrics);
+        metrics.addNodes(flatParseTree.size());
+        metrics.updateMaxDepth(flatParseTree.getMaxDepth());
+    }
+
+    /**
+     * Stores the statistics of parsing the file as properties of the scanned file, and the prediction statistics of
+     * every grammar rule as nodes next to it if the grammar is profiled. Properties that are not known are removed,
+     * so none are left over from a previous scan.
+     */
+    void saveParseStatistics(ScannedFileDescriptor scannedFile, FileMetrics metrics) {
+        scannedFile.setTokenCount(metrics.getTokens());
+        scannedFile.setNodeCount(metrics.getNodes());
+        scannedFile.setMaxDepth(metrics.getMaxDepth());
+        long parseNanos = metrics.getTime(ScanMetrics.Phase.LEXING) + metrics.getTime(ScanMetrics.Phase.PARSING);
+        scannedFile.setParseTime(TimeUnit.NANOSECONDS.toMillis(parseNanos));
 
-        NodeDescriptor node = createDescriptor(parseTree);
-        parent.getChildren().add(node);
+        ParseProfile profile = metrics.getProfile();
+        scannedFile.setLlFallbacks(profile != null ? profile.getLlFallbacks() : null);
+        scannedFile.setAmbiguities(profile != null ? profile.getAmbiguities() : null);
+        scannedFile.setDfaStates(profile != null ? profile.getDfaStates() : null);
+        if (profile == null) return;
 
-        for (int i = 0; i < parseTree.getChildCount(); i++) {
-            ParseTree child = parseTree.getChild(i);
-            saveParseTreeToNeo4J(node, child);
+        for (ParseProfile.RuleStatistics ruleStatistics : profile.getRuleStatistics()) {
+            RuleProfileDescriptor ruleProfile = store.create(RuleProfileDescriptor.class);
+            ruleProfile.setRule(ruleStatistics.getRule());
+            ruleProfile.setInvocations(ruleStatistics.getInvocations());
+            ruleProfile.setPredictionTime(TimeUnit.NANOSECONDS.toMicros(ruleStatistics.getPredictionNanos()));
+            ruleProfile.setSllLookahead(ruleStatistics.getSllLookahead());
+            ruleProfile.setLlLookahead(ruleStatistics.getLlLookahead());
+            ruleProfile.setLlFallbacks(ruleStatistics.getLlFallbacks());
+            ruleProfile.setAmbiguities(ruleStatistics.getAmbiguities());
+            ruleProfile.setContextSensitivities(ruleStatistics.getContextSensitivities());
+            ruleProfile.setErrors(ruleStatistics.getErrors());
+            scannedFile.getRuleProfiles().add(ruleProfile);
         }
     }
 
-    private NodeDescriptor createDescriptor(ParseTree parseTree) {
-        NodeDescriptor descriptor = store.create(NodeDescriptor.class);
-        descriptor.setText(parseTree.getText());
-        addCustomLabelToDescriptor(descriptor, parseTree);
-
-        return descriptor;
+    TreeStream openTreeStream(ScannedFileDescriptor rootNode, TreePruning pruning, FileMetrics metrics) {
+        return new TreeStream(rootNode, pruning, metrics);
     }
 
-    private void addCustomLabelToDescriptor(AntlrDescriptor descriptor, ParseTree parseTree) {
-        String className = parseTree.getClass().getName();
-        Matcher matcher = Pattern.compile("\\$(.*?)Context").matcher(className);
-        String nodeLabel = matcher.find() ? matcher.group(1) : "TerminalNode";
+    /**
+     * Collects the children of the grammar root handed over while a file is parsed streaming, and writes them as soon
+     * as they add up to the chunk size, so only one chunk of the tree is kept in memory at a time. The position of the
+     * grammar root is put together from the chunks, its text is not stored, as it would keep the whole file in memory.
+     */
+    class TreeStream implements Consumer<ParseResult>, AutoCloseable {
+
+        private final ScannedFileDescriptor rootNode;
+        private final TreePruning pruning;
+        private final FileMetrics metrics;
+        private TreePruning.Rules rules;
+        private FlatParseTree pendingTrees;
 
-        //Cypher does not allow for parameterization of labels, which is why string formatting is used
-        String query = String.format("MATCH (n) WHERE id(n) = %s SET n:%s", descriptor.getId(), nodeLabel);
-        store.executeQuery(query).close();
+        private TreeStream(ScannedFileDescriptor rootNode, TreePruning pruning, FileMetrics metrics) {
+            this.rootNode = rootNode;
+            this.pruning = pruning;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public void accept(ParseResult topLevelTrees) {
+            if (pendingTrees == null) {
+                pendingTrees = parseTreeFlattener.createFlatParseTree();
+            }
+            long start = System.nanoTime();
+            if (rules == null) {
+                rules = pruning.resolve(topLevelTrees.getRuleNames(), topLevelTrees.getVocabulary());
+            }
+            parseTreeFlattener.flattenInto(pendingTrees, topLevelTrees, pruning, rules);
+            metrics.addTime(ScanMetrics.Phase.FLATTENING, System.nanoTime() - start);
+            if (pendingTrees.size() >= streamingChunkSize) {
+                writePendingTrees();
+            }
+        }
+
+        private void writePendingTrees() {
+            if (pendingTrees == null) return;
+            parseTreeFlattener.complete(pendingTrees);
+            writeTrees(pendingTrees, rootNode, metrics);
+            if (pendingTrees.hasRootSourcePosition()) {
+                // the first chunk with a position starts the grammar root, the last one ends it
+                if (rootNode.getStartOffset() == null) {
+                    rootNode.setStartOffset(pendingTrees.getRootSourceStart());
+                    rootNode.setLine(pendingTrees.getRootLine());
+                    rootNode.setColumn(pendingTrees.getRootColumn());
+                }
+                rootNode.setEndOffset(pendingTrees.getRootSourceEnd());
+            }
+            pendingTrees = null;
+        }
+
+        @Override
+        public void close() {
+            writePendingTrees();
+        }
     }
 }
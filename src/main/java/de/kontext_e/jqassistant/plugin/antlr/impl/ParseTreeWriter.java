@@ -0,0 +1,13 @@
+package de.kontext_e.jqassistant.plugin.antlr.impl;
+
+import de.kontext_e.jqassistant.plugin.antlr.api.model.AntlrDescriptor;
+
+interface ParseTreeWriter {
+
+    /**
+     * @param metrics the metrics of the file the tree belongs to, which the time spent and the queries executed are
+     *                added to
+     */
+    void write(FlatParseTree parseTree, AntlrDescriptor rootNode, FileMetrics metrics);
+
+}
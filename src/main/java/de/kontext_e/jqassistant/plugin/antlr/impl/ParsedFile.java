@@ -0,0 +1,24 @@
+package de.kontext_e.jqassistant.plugin.antlr.impl;
+
+/**
+ * The flattened parse tree of a file together with the metrics collected while parsing it, which are completed once
+ * the tree has been written.
+ */
+class ParsedFile {
+
+    private final FlatParseTree parseTree;
+    private final FileMetrics metrics;
+
+    ParsedFile(FlatParseTree parseTree, FileMetrics metrics) {
+        this.parseTree = parseTree;
+        this.metrics = metrics;
+    }
+
+    FlatParseTree getParseTree() {
+        return parseTree;
+    }
+
+    FileMetrics getMetrics() {
+        return metrics;
+    }
+}
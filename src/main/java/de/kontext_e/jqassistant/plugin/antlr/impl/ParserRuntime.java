@@ -0,0 +1,24 @@
+package de.kontext_e.jqassistant.plugin.antlr.impl;
+
+import org.antlr.v4.runtime.CharStream;
+
+import java.io.Closeable;
+import java.util.function.Consumer;
+
+/**
+ * Parses files according to one grammar. Instances are kept for the lifetime of the plugin and used for all files of
+ * that grammar.
+ */
+interface ParserRuntime extends Closeable {
+
+    ParseResult parse(CharStream input);
+
+    /**
+     * Parses the input without keeping the whole parse tree: every child of the grammar root is handed over as soon as
+     * it has been parsed. The input may be unbuffered, so the text of the tokens is copied.
+     *
+     * @return a result without parse trees, carrying the statistics of the whole input
+     */
+    ParseResult parseStreaming(CharStream input, Consumer<ParseResult> topLevelTrees);
+
+}
@@ -0,0 +1,98 @@
+package de.kontext_e.jqassistant.plugin.antlr.impl;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Parses and flattens the files handed to the plugin on a pool of worker threads, while the scanning thread goes on
+ * with the next files. Only files that have actually been scanned are parsed. Their trees are written by the scanning
+ * thread in the order in which the files were scanned, as soon as they are parsed, and at the latest once more than
+ * queueDepth files are waiting, so no more flattened trees than that are kept in memory.
+ */
+class ParsingPipeline implements Closeable {
+
+    private final ExecutorService executor;
+    private final int queueDepth;
+    private final Deque<PendingFile> pendingFiles = new ArrayDeque<>();
+
+    ParsingPipeline(int parallelism, int queueDepth) {
+        this.executor = Executors.newFixedThreadPool(parallelism, new DaemonThreadFactory("jqassistant-antlr-parser-"));
+        this.queueDepth = queueDepth;
+    }
+
+    /**
+     * Starts parsing a scanned file, its tree is written later on by one of the write methods.
+     */
+    void submit(Supplier<ParsedFile> parsing, Consumer<ParsedFile> writing) {
+        pendingFiles.add(new PendingFile(executor.submit(parsing::get), parsing, writing));
+    }
+
+    /**
+     * Writes the trees of the files parsed so far, waiting for the oldest ones while more than queueDepth files are
+     * pending.
+     */
+    void writeParsedFiles() {
+        while (!pendingFiles.isEmpty() && (pendingFiles.size() > queueDepth || pendingFiles.peek().parsed.isDone())) {
+            writeOldestFile();
+        }
+    }
+
+    /**
+     * Writes the trees of all pending files, waiting for those still being parsed.
+     */
+    void writeAll() {
+        while (!pendingFiles.isEmpty()) {
+            writeOldestFile();
+        }
+    }
+
+    private void writeOldestFile() {
+        PendingFile pendingFile = pendingFiles.poll();
+        pendingFile.writing.accept(pendingFile.getParsedFile());
+    }
+
+    @Override
+    public void close() {
+        pendingFiles.forEach(pendingFile -> pendingFile.parsed.cancel(true));
+        pendingFiles.clear();
+        executor.shutdownNow();
+    }
+
+    private static final class PendingFile {
+
+        private final Future<ParsedFile> parsed;
+        private final Supplier<ParsedFile> parsing;
+        private final Consumer<ParsedFile> writing;
+
+        PendingFile(Future<ParsedFile> parsed, Supplier<ParsedFile> parsing, Consumer<ParsedFile> writing) {
+            this.parsed = parsed;
+            this.parsing = parsing;
+            this.writing = writing;
+        }
+
+        /**
+         * @return the tree of the file, which is parsed on the calling thread if waiting for it is interrupted
+         */
+        ParsedFile getParsedFile() {
+            try {
+                return parsed.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                parsed.cancel(true);
+                return parsing.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Error) throw (Error) cause;
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                throw new IllegalStateException("Could not parse file", cause);
+            }
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package de.kontext_e.jqassistant.plugin.antlr.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * Sums up the timings and counts of all files scanned with each grammar and keeps the slowest files, so a summary of
+ * where the time of a scan went can be reported once it is finished.
+ */
+class ScanMetrics {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ScanMetrics.class);
+
+    private static final Comparator<FileMetrics> BY_TOTAL_TIME = Comparator.comparingLong(FileMetrics::getTotalTime);
+
+    enum Phase {
+        GENERATION("generation"),
+        COMPILATION("compilation"),
+        LOADING("loading"),
+        LEXING("lexing"),
+        PARSING("parsing"),
+        FLATTENING("flattening"),
+        DELETION("deletion"),
+        NODE_CREATION("nodeCreation"),
+        LABELS("labels"),
+        RELATIONS("relations");
+
+        private final String name;
+
+        Phase(String name) {
+            this.name = name;
+        }
+
+        String getName() {
+            return name;
+        }
+    }
+
+    private final int slowestFileCount;
+    private final Map<String, FileMetrics> grammarMetrics = new TreeMap<>();
+    private final Map<String, Long> grammarFileCounts = new TreeMap<>();
+    private final PriorityQueue<FileMetrics> slowestFiles = new PriorityQueue<>(BY_TOTAL_TIME);
+
+    ScanMetrics(int slowestFileCount) {
+        this.slowestFileCount = slowestFileCount;
+    }
+
+    /**
+     * Adds time spent for a grammar as a whole, like generating and compiling its lexer and parser.
+     */
+    synchronized void addGrammarTime(String grammarName, Phase phase, long nanos) {
+        getGrammarMetrics(grammarName).addTime(phase, nanos);
+    }
+
+    synchronized void complete(FileMetrics fileMetrics) {
+        getGrammarMetrics(fileMetrics.getGrammarName()).addAll(fileMetrics);
+        grammarFileCounts.merge(fileMetrics.getGrammarName(), 1L, Long::sum);
+
+        if (slowestFileCount <= 0) return;
+        slowestFiles.add(fileMetrics);
+        if (slowestFiles.size() > slowestFileCount) {
+            slowestFiles.poll();
+        }
+    }
+
+    private FileMetrics getGrammarMetrics(String grammarName) {
+        return grammarMetrics.computeIfAbsent(grammarName, name -> new FileMetrics(null, name));
+    }
+
+    synchronized boolean hasFiles() {
+        return !grammarFileCounts.isEmpty();
+    }
+
+    /**
+     * Logs the summary, which is only done once the scan is finished.
+     */
+    synchronized void log() {
+        for (Map.Entry<String, FileMetrics> grammar : grammarMetrics.entrySet()) {
+            FileMetrics metrics = grammar.getValue();
+            LOGGER.info("Scanned {} files ({} bytes, {} tokens, {} nodes, {} queries, {} two-stage fallbacks) with grammar {}: {}",
+                    grammarFileCounts.getOrDefault(grammar.getKey(), 0L), metrics.getBytes(), metrics.getTokens(),
+                    metrics.getNodes(), metrics.getQueries(), metrics.getTwoStageFallbacks(), grammar.getKey(),
+                    formatTimes(metrics));
+        }
+        for (FileMetrics file : getSlowestFiles()) {
+            LOGGER.info("Slow file {} ({} bytes, {} tokens, {} nodes): {}",
+                    file.getPath(), file.getBytes(), file.getTokens(), file.getNodes(), formatTimes(file));
+        }
+    }
+
+    /**
+     * Writes the summary as JSON into the file, replacing the summary written before. Its size does not grow with
+     * the number of scanned files, so it may be written after every file.
+     */
+    synchronized void write(File metricsFile) {
+        try {
+            Files.createDirectories(metricsFile.getAbsoluteFile().getParentFile().toPath());
+            Files.writeString(metricsFile.toPath(), toJson());
+        } catch (IOException e) {
+            LOGGER.warn("Could not write scan metrics to: {}", metricsFile, e);
+        }
+    }
+
+    private List<FileMetrics> getSlowestFiles() {
+        List<FileMetrics> files = new ArrayList<>(slowestFiles);
+        files.sort(BY_TOTAL_TIME.reversed());
+        return files;
+    }
+
+    private static String formatTimes(FileMetrics metrics) {
+        StringBuilder times = new StringBuilder();
+        times.append("total ").append(toMillis(metrics.getTotalTime())).append(" ms");
+        for (Phase phase : Phase.values()) {
+            long nanos = metrics.getTime(phase);
+            if (nanos == 0) continue;
+            times.append(", ").append(phase.getName()).append(' ').append(toMillis(nanos)).append(" ms");
+        }
+        return times.toString();
+    }
+
+    private static long toMillis(long nanos) {
+        return nanos / 1_000_000;
+    }
+
+    private String toJson() {
+        StringBuilder json = new StringBuilder("{\n  \"grammars\": {");
+        String separator = "\n";
+        for (Map.Entry<String, FileMetrics> grammar : grammarMetrics.entrySet()) {
+            json.append(separator).append("    ").append(quote(grammar.getKey())).append(": {")
+                    .append("\"files\": ").append(grammarFileCounts.getOrDefault(grammar.getKey(), 0L)).append(", ");
+            appendMetrics(json, grammar.getValue());
+            json.append('}');
+            separator = ",\n";
+        }
+        json.append("\n  },\n  \"slowestFiles\": [");
+        separator = "\n";
+        for (FileMetrics file : getSlowestFiles()) {
+            json.append(separator).append("    {\"path\": ").append(quote(file.getPath()))
+                    .append(", \"grammar\": ").append(quote(file.getGrammarName())).append(", ");
+            appendMetrics(json, file);
+            json.append('}');
+            separator = ",\n";
+        }
+        return json.append("\n  ]\n}\n").toString();
+    }
+
+    private static void appendMetrics(StringBuilder json, FileMetrics metrics) {
+        json.append("\"bytes\": ").append(metrics.getBytes())
+                .append(", \"tokens\": ").append(metrics.getTokens())
+                .append(", \"nodes\": ").append(metrics.getNodes())
+                .append(", \"queries\": ").append(metrics.getQueries())
+                .append(", \"twoStageFallbacks\": ").append(metrics.getTwoStageFallbacks())
+                .append(", \"totalNanos\": ").append(metrics.getTotalTime())
+                .append(", \"phaseNanos\": {");
+        String separator = "";
+        for (Phase phase : Phase.values()) {
+            json.append(separator).append(quote(phase.getName())).append(": ").append(metrics.getTime(phase));
+            separator = ", ";
+        }
+        json.append('}');
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
@@ -0,0 +1,108 @@
+package de.kontext_e.jqassistant.plugin.antlr.impl;
+
+import com.buschmais.jqassistant.core.store.api.Store;
+import com.buschmais.xo.api.Query;
+import de.kontext_e.jqassistant.plugin.antlr.api.model.TokenDescriptor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The shared token nodes terminal nodes refer to if tokens are interned. Every grammar has its own token nodes, as the
+ * same name may stand for different tokens in different grammars. Tokens missing from the cache are merged into
+ * the store with one statement per tree or chunk, so a token evicted from the cache is found again instead of being
+ * created twice. The cache keeps the most recently used tokens up to its capacity.
+ */
+class TokenCache {
+
+    private static final String MERGE_TOKENS_QUERY = "UNWIND $tokens AS token " +
+            "MERGE (t:Antlr:Token {grammar: token.grammar, type: token.type, text: token.text}) " +
+            "RETURN token.grammar AS grammar, token.type AS type, token.text AS text, t AS token";
+
+    private final Store store;
+    private final Map<TokenKey, TokenDescriptor> tokens;
+
+    TokenCache(Store store, int capacity) {
+        this.store = store;
+        this.tokens = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<TokenKey, TokenDescriptor> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @return the token of every terminal node from start to end of the tree, indexed relative to start, and null for
+     * every rule node
+     */
+    TokenDescriptor[] resolve(FlatParseTree parseTree, int start, int end, FileMetrics metrics) {
+        TokenDescriptor[] resolved = new TokenDescriptor[end - start];
+        Map<TokenKey, List<Integer>> missingTokens = new LinkedHashMap<>();
+        String grammar = metrics.getGrammarName();
+        for (int i = start; i < end; i++) {
+            if (!parseTree.isTerminal(i)) continue;
+
+            TokenKey key = new TokenKey(grammar, parseTree.getTokenName(i), parseTree.getText(i));
+            TokenDescriptor token = tokens.get(key);
+            if (token != null) {
+                resolved[i - start] = token;
+            } else {
+                missingTokens.computeIfAbsent(key, k -> new ArrayList<>()).add(i - start);
+            }
+        }
+        if (!missingTokens.isEmpty()) {
+            mergeTokens(missingTokens, resolved, metrics);
+        }
+        return resolved;
+    }
+
+    private void mergeTokens(Map<TokenKey, List<Integer>> missingTokens, TokenDescriptor[] resolved, FileMetrics metrics) {
+        List<Map<String, Object>> parameters = new ArrayList<>(missingTokens.size());
+        for (TokenKey key : missingTokens.keySet()) {
+            parameters.add(Map.of("grammar", key.grammar, "type", key.type, "text", key.text));
+        }
+
+        metrics.countQuery();
+        try (Query.Result<Query.Result.CompositeRowObject> result = store.executeQuery(MERGE_TOKENS_QUERY, Map.of("tokens", parameters))) {
+            for (Query.Result.CompositeRowObject row : result) {
+                TokenKey key = new TokenKey(row.get("grammar", String.class), row.get("type", String.class),
+                        row.get("text", String.class));
+                TokenDescriptor token = row.get("token", TokenDescriptor.class);
+                tokens.put(key, token);
+                for (int index : missingTokens.get(key)) {
+                    resolved[index] = token;
+                }
+            }
+        }
+    }
+
+    private static class TokenKey {
+
+        private final String grammar;
+        private final String type;
+        private final String text;
+
+        private TokenKey(String grammar, String type, String text) {
+            this.grammar = grammar;
+            this.type = type;
+            this.text = text;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof TokenKey)) return false;
+            TokenKey other = (TokenKey) o;
+            return grammar.equals(other.grammar) && type.equals(other.type) && text.equals(other.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(grammar, type, text);
+        }
+    }
+}
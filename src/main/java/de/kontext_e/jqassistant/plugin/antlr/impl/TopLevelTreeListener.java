@@ -0,0 +1,81 @@
+package de.kontext_e.jqassistant.plugin.antlr.impl;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Vocabulary;
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeListener;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hands every child of the grammar root over as soon as it has been parsed and removes it from the root, so the parse
+ * tree of a file is never kept as a whole. A child is only known to be complete once the root gets its next child:
+ * a left-recursive rule is attached to the root after it has been exited, so exiting a rule does not tell whether the
+ * last child of the root is the exited rule.
+ */
+class TopLevelTreeListener implements ParseTreeListener {
+
+    private final String[] ruleNames;
+    private final Vocabulary vocabulary;
+    private final Consumer<ParseResult> topLevelTrees;
+
+    TopLevelTreeListener(String[] ruleNames, Vocabulary vocabulary, Consumer<ParseResult> topLevelTrees) {
+        this.ruleNames = ruleNames;
+        this.vocabulary = vocabulary;
+        this.topLevelTrees = topLevelTrees;
+    }
+
+    @Override
+    public void visitTerminal(TerminalNode node) {
+        // a terminal is complete as soon as it is added
+        handOverCompletedTrees(node, null);
+    }
+
+    @Override
+    public void visitErrorNode(ErrorNode node) {
+        handOverCompletedTrees(node, null);
+    }
+
+    @Override
+    public void enterEveryRule(ParserRuleContext ctx) {
+        // the entered rule is either the last child of the root already or not yet added to it
+        handOverCompletedTrees(ctx, ctx);
+    }
+
+    @Override
+    public void exitEveryRule(ParserRuleContext ctx) {
+        // children are handed over once the root gets its next child
+    }
+
+    private void handOverCompletedTrees(ParseTree parseTree, ParseTree incompleteTree) {
+        ParseTree parent = parseTree.getParent();
+        if (parent == null || parent.getParent() != null) return;
+
+        ParserRuleContext rootContext = (ParserRuleContext) parent;
+        if (rootContext.children == null || rootContext.children.isEmpty()) return;
+
+        List<ParseTree> completedTrees = new ArrayList<>(rootContext.children);
+        rootContext.children.clear();
+        if (completedTrees.get(completedTrees.size() - 1) == incompleteTree) {
+            rootContext.children.add(completedTrees.remove(completedTrees.size() - 1));
+        }
+        if (completedTrees.isEmpty()) return;
+
+        topLevelTrees.accept(new ParseResult(completedTrees, ruleNames, vocabulary));
+    }
+
+    /**
+     * Hands over the last child of the root, and children the parser added to the root without notifying listeners,
+     * e.g. tokens conjured up during error recovery.
+     */
+    void handOverRemainingTrees(ParserRuleContext rootContext) {
+        if (rootContext == null || rootContext.children == null || rootContext.children.isEmpty()) return;
+
+        topLevelTrees.accept(new ParseResult(new ArrayList<>(rootContext.children), ruleNames, vocabulary));
+        rootContext.children.clear();
+    }
+}
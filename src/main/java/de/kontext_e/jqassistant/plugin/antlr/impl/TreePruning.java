@@ -0,0 +1,90 @@
+package de.kontext_e.jqassistant.plugin.antlr.impl;
+
+import de.kontext_e.jqassistant.plugin.antlr.api.config.GrammarConfiguration;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.Vocabulary;
+
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The parts of the parse trees of a grammar that are not stored as nodes: excluded rules and tokens, single-child
+ * chains of rules that are collapsed into one node and leaf rules whose descendants are dropped. The text of a pruned
+ * node still is part of the text of its parent.
+ */
+class TreePruning {
+
+    static final TreePruning NONE = new TreePruning(new HashSet<>(), new HashSet<>(), new HashSet<>(), false);
+
+    private final Set<String> excludedRules;
+    private final Set<String> excludedTokens;
+    private final Set<String> leafRules;
+    private final boolean collapseSingleChildRules;
+
+    private TreePruning(Set<String> excludedRules, Set<String> excludedTokens, Set<String> leafRules,
+                        boolean collapseSingleChildRules) {
+        this.excludedRules = excludedRules;
+        this.excludedTokens = excludedTokens;
+        this.leafRules = leafRules;
+        this.collapseSingleChildRules = collapseSingleChildRules;
+    }
+
+    static TreePruning of(GrammarConfiguration grammarConfiguration) {
+        return new TreePruning(new HashSet<>(grammarConfiguration.getExcludedRules()),
+                new HashSet<>(grammarConfiguration.getExcludedTokens()),
+                new HashSet<>(grammarConfiguration.getLeafRules()),
+                grammarConfiguration.getCollapseSingleChildRules());
+    }
+
+    boolean collapsesSingleChildRules() {
+        return collapseSingleChildRules;
+    }
+
+    /**
+     * Resolves the configured names once per parse, so nodes are matched by their rule index or token type.
+     */
+    Rules resolve(String[] ruleNames, Vocabulary vocabulary) {
+        BitSet excludedRuleIndices = new BitSet();
+        BitSet leafRuleIndices = new BitSet();
+        for (int ruleIndex = 0; ruleIndex < ruleNames.length; ruleIndex++) {
+            excludedRuleIndices.set(ruleIndex, excludedRules.contains(ruleNames[ruleIndex]));
+            leafRuleIndices.set(ruleIndex, leafRules.contains(ruleNames[ruleIndex]));
+        }
+
+        // tokens may be given by their symbolic name like SEMI or their literal name like ';', EOF has the type -1
+        BitSet excludedTokenTypes = new BitSet();
+        for (int tokenType = Token.EOF; tokenType <= vocabulary.getMaxTokenType(); tokenType++) {
+            if (excludedTokens.contains(vocabulary.getSymbolicName(tokenType))
+                    || excludedTokens.contains(vocabulary.getLiteralName(tokenType))) {
+                excludedTokenTypes.set(tokenType - Token.EOF);
+            }
+        }
+        return new Rules(excludedRuleIndices, leafRuleIndices, excludedTokenTypes);
+    }
+
+    static class Rules {
+
+        private final BitSet excludedRules;
+        private final BitSet leafRules;
+        private final BitSet excludedTokenTypes;
+
+        private Rules(BitSet excludedRules, BitSet leafRules, BitSet excludedTokenTypes) {
+            this.excludedRules = excludedRules;
+            this.leafRules = leafRules;
+            this.excludedTokenTypes = excludedTokenTypes;
+        }
+
+        boolean isExcludedRule(int ruleIndex) {
+            return excludedRules.get(ruleIndex);
+        }
+
+        boolean isLeafRule(int ruleIndex) {
+            return leafRules.get(ruleIndex);
+        }
+
+        boolean isExcludedToken(int tokenType) {
+            return tokenType >= Token.EOF && excludedTokenTypes.get(tokenType - Token.EOF);
+        }
+    }
+}
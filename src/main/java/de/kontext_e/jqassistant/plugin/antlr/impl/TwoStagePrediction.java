@@ -0,0 +1,49 @@
+package de.kontext_e.jqassistant.plugin.antlr.impl;
+
+import org.antlr.v4.runtime.ANTLRErrorListener;
+import org.antlr.v4.runtime.ANTLRErrorStrategy;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.Parser;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Parses with the faster SLL prediction and without error recovery first, and parses again with full LL prediction
+ * and the error strategy of the parser only if that fails, either because SLL can not predict the input or because it
+ * contains syntax errors. The tokens are not lexed again for the second stage.
+ */
+class TwoStagePrediction {
+
+    private TwoStagePrediction() {}
+
+    static ParserRuleContext parse(Parser parser, Function<Parser, ParserRuleContext> grammarRootRule) {
+        ANTLRErrorStrategy errorHandler = parser.getErrorHandler();
+        List<ANTLRErrorListener> errorListeners = new ArrayList<>(parser.getErrorListeners());
+
+        parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        parser.setErrorHandler(new BailErrorStrategy());
+        parser.removeErrorListeners();
+        try {
+            return grammarRootRule.apply(parser);
+        } catch (ParseCancellationException e) {
+            parser.reset();
+            parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+            parser.setErrorHandler(errorHandler);
+            errorListeners.forEach(parser::addErrorListener);
+            return grammarRootRule.apply(parser);
+        }
+    }
+
+    /**
+     * @return whether the parser, after parsing in two stages, had to fall back to LL prediction
+     */
+    static boolean fellBack(Parser parser) {
+        // a fresh parser predicts with LL, but the first stage always switches it to SLL
+        return parser.getInterpreter().getPredictionMode() == PredictionMode.LL;
+    }
+}
@@ -0,0 +1,18 @@
+package de.kontext_e.jqassistant.plugin.antlr.impl;
+
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.NoViableAltException;
+import org.antlr.v4.runtime.Parser;
+
+/**
+ * The default error strategy reports the whole input of an alternative that could not be predicted, which an
+ * unbuffered token stream no longer holds. Only the offending token is reported instead.
+ */
+class UnbufferedErrorStrategy extends DefaultErrorStrategy {
+
+    @Override
+    protected void reportNoViableAlternative(Parser recognizer, NoViableAltException e) {
+        String message = "no viable alternative at input " + getTokenErrorDisplay(e.getOffendingToken());
+        recognizer.notifyErrorListeners(e.getOffendingToken(), message, e);
+    }
+}
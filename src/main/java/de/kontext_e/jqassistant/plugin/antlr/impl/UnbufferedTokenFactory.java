@@ -0,0 +1,35 @@
+package de.kontext_e.jqassistant.plugin.antlr.impl;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonToken;
+import org.antlr.v4.runtime.CommonTokenFactory;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.misc.Pair;
+
+/**
+ * Copies the text of every token, as an unbuffered char stream no longer holds it once the token has been parsed.
+ * The end of file token gets the same text as it has when read from a buffered stream.
+ */
+class UnbufferedTokenFactory extends CommonTokenFactory {
+
+    private static final String EOF_TEXT = "<EOF>";
+
+    private int tokenCount;
+
+    UnbufferedTokenFactory() {
+        super(true);
+    }
+
+    @Override
+    public CommonToken create(Pair<TokenSource, CharStream> source, int type, String text, int channel,
+                              int start, int stop, int line, int charPositionInLine) {
+        tokenCount++;
+        String tokenText = type == Token.EOF && text == null ? EOF_TEXT : text;
+        return super.create(source, type, tokenText, channel, start, stop, line, charPositionInLine);
+    }
+
+    int getTokenCount() {
+        return tokenCount;
+    }
+}
@@ -1,6 +1,10 @@
 import com.buschmais.jqassistant.core.scanner.api.DefaultScope;
 import com.buschmais.jqassistant.core.test.plugin.AbstractPluginIT;
 import com.buschmais.jqassistant.plugin.common.api.model.FileDescriptor;
+import de.kontext_e.jqassistant.plugin.antlr.api.SourceText;
+import de.kontext_e.jqassistant.plugin.antlr.api.model.NodeDescriptor;
+import de.kontext_e.jqassistant.plugin.antlr.api.model.ScannedFileDescriptor;
+import de.kontext_e.jqassistant.plugin.antlr.impl.GrammarPackager;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -13,7 +17,11 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -63,6 +71,713 @@ public class ConfigurationIT extends AbstractPluginIT {
         assertThrows(IllegalArgumentException.class, () -> result.getColumn("n"));
     }
 
+    @Test
+    void testRuleLabels(){
+        var file = new File("src/test/resources/logging/output.logging");
+        var fileDescriptor = store.create(FileDescriptor.class);
+        Map<String, Object> properties = Map.of(CONFIG_PREFIX, CONFIG_FOLDER + "config.yaml");
+
+        getScanner(properties).scan(file, fileDescriptor, file.getAbsolutePath(), DefaultScope.NONE);
+
+        for (String label : List.of("Entry", "Timestamp", "Level", "Message")) {
+            var nodes = query("MATCH (n:Antlr:Node:" + label + ") RETURN count(n) AS nodes").getColumn("nodes");
+            assertThat(nodes).containsExactly(6L);
+        }
+        var levels = query("MATCH (:Entry)-[:HAS_CHILD]->(n:Level) RETURN n.text AS text").getColumn("text");
+        assertThat(levels).containsExactlyInAnyOrder("INFO", "INFO", "INFO", "DEBUG", "DEBUG", "ERROR");
+        // every node carries the label of its rule or token besides :Antlr:Node
+        var unlabeled = query("MATCH (n:Antlr:Node) WHERE NOT n:ScannedFile AND size(labels(n)) < 3 " +
+                "WITH f, count(n) AS nodes RETURN nodes").getColumn("nodes");
+        assertThat(unlabeled).containsExactly(0L);
+    }
+
+    @Test
+    void testBulkWriterMode(){
+        var file = new File("src/test/resources/logging/output.logging");
+        var fileDescriptor = store.create(FileDescriptor.class);
+        Map<String, Object> properties = Map.of(CONFIG_PREFIX, CONFIG_FOLDER + "bulkWriter.yaml");
+
+        getScanner(properties).scan(file, fileDescriptor, file.getAbsolutePath(), DefaultScope.NONE);
+
+        var entries = query("MATCH (:Antlr:ScannedFile)-[:HAS_CHILD]->(n:Antlr:Node:Entry) RETURN n").getColumn("n");
+        assertThat(entries).hasSize(6);
+        var children = query("MATCH (n:Entry)-[:HAS_CHILD]->(c:Antlr:Node) " +
+                "WHERE n.text CONTAINS '2018-May-05 14:20:18 INFO some error occurred' RETURN c.text AS text").getColumn("text");
+        assertThat(children).contains("2018-May-05 14:20:18", "INFO", "some error occurred");
+    }
+
+    @Test
+    void testBulkWriterModeWritesSameTreeInSeveralChunks(){
+        var file = new File("src/test/resources/logging/output.logging");
+
+        // bulkWriter.yaml writes the tree in chunks of 7 nodes, each in its own transaction
+        getScanner(Map.of(CONFIG_PREFIX, CONFIG_FOLDER + "config.yaml"))
+                .scan(file, store.create(FileDescriptor.class), file.getAbsolutePath(), DefaultScope.NONE);
+        getScanner(Map.of(CONFIG_PREFIX, CONFIG_FOLDER + "bulkWriter.yaml"))
+                .scan(file, store.create(FileDescriptor.class), file.getAbsolutePath(), DefaultScope.NONE);
+
+        List<Long> nodeCounts = query("MATCH (f:Antlr:ScannedFile)-[:HAS_CHILD*]->(n:Antlr:Node) " +
+                "WITH f, count(n) AS nodes RETURN nodes").getColumn("nodes");
+        assertThat(nodeCounts).hasSize(2).allMatch(nodes -> nodes > 7);
+        assertThat(nodeCounts.get(1)).isEqualTo(nodeCounts.get(0));
+        List<Long> edgeCounts = query("MATCH (f:Antlr:ScannedFile)-[:HAS_CHILD*0..]->()-[r:HAS_CHILD]->() " +
+                "WITH f, count(r) AS edges RETURN edges").getColumn("edges");
+        assertThat(edgeCounts).hasSize(2);
+        assertThat(edgeCounts.get(1)).isEqualTo(edgeCounts.get(0));
+    }
+
+    @Test
+    void testParserRuntimeSharedByFiles(@TempDir Path directory) throws IOException {
+        var scanner = getScanner(Map.of(CONFIG_PREFIX, CONFIG_FOLDER + "config.yaml"));
+        var logFile = new File("src/test/resources/logging/output.logging");
+        var otherLogFile = directory.resolve("other.logging");
+        Files.writeString(otherLogFile, "2018-May-05 14:20:30 INFO disk checked\n");
+
+        // the lexer and parser loaded for the first file parse the second one as well
+        scanner.scan(logFile, store.create(FileDescriptor.class), logFile.getAbsolutePath(), DefaultScope.NONE);
+        scanner.scan(otherLogFile.toFile(), store.create(FileDescriptor.class), otherLogFile.toString(), DefaultScope.NONE);
+
+        var entryCounts = query("MATCH (f:Antlr:ScannedFile)-[:HAS_CHILD]->(n:Antlr:Node:Entry) " +
+                "WITH f, count(n) AS entries RETURN entries").getColumn("entries");
+        assertThat(entryCounts).containsExactlyInAnyOrder(6L, 1L);
+        var messages = query("MATCH (n:Antlr:Node:Message) WHERE n.text = 'disk checked' RETURN n").getColumn("n");
+        assertThat(messages).hasSize(1);
+    }
+
+    @Test
+    void testGrammarsSetUpOncePerScanner(@TempDir Path directory) throws IOException {
+        var scanner = getScanner(Map.of(CONFIG_PREFIX, CONFIG_FOLDER + "grammars.yaml"));
+        var loggingCopy = directory.resolve("copy.logging");
+        Files.copy(Path.of("src/test/resources/logging/output.logging"), loggingCopy);
+        var equation = directory.resolve("sum.equation");
+        Files.writeString(equation, "y = 1 + 2\n");
+
+        // the grammars alternate, so each file has to be parsed with the grammar set up for its extension
+        for (var file : List.of(new File("src/test/resources/logging/output.logging"),
+                equation.toFile(),
+                loggingCopy.toFile(),
+                new File("src/test/resources/equation/weird.equation"))) {
+            scanner.scan(file, store.create(FileDescriptor.class), file.getAbsolutePath(), DefaultScope.NONE);
+        }
+
+        var loggingFiles = query("MATCH (f:Antlr:ScannedFile)-[:HAS_CHILD]->(n:Antlr:Node:Entry) " +
+                "WITH f, count(n) AS entries WHERE entries = 6 RETURN f").getColumn("f");
+        assertThat(loggingFiles).hasSize(2);
+        var relops = query("MATCH (:Antlr:ScannedFile)-[:HAS_CHILD]->(n:Antlr:Node:Relop) RETURN n.text AS text").getColumn("text");
+        assertThat(relops).containsExactly("=", "=");
+        var mixedFiles = query("MATCH (e:Entry)<-[:HAS_CHILD]-(f:Antlr:ScannedFile)-[:HAS_CHILD]->(r:Relop) " +
+                "RETURN count(DISTINCT f) AS files").getColumn("files");
+        assertThat(mixedFiles).containsExactly(0L);
+    }
+
+    @Test
+    void testParallelParsing(@TempDir Path directory) throws IOException {
+        var scanner = getScanner(Map.of(CONFIG_PREFIX, CONFIG_FOLDER + "parallelParsing.yaml"));
+        for (int i = 0; i < 4; i++) {
+            var file = directory.resolve("output" + i + ".logging");
+            Files.copy(Path.of("src/test/resources/logging/output.logging"), file);
+        }
+
+        for (int i = 0; i < 4; i++) {
+            var file = directory.resolve("output" + i + ".logging").toFile();
+            var fileDescriptor = store.create(FileDescriptor.class);
+            scanner.scan(file, fileDescriptor, file.getAbsolutePath(), DefaultScope.NONE);
+        }
+        // the trees of the last files are written once the plugin is configured for the next scan
+        getScanner(Map.of(CONFIG_PREFIX, CONFIG_FOLDER + "config.yaml"));
+
+        var entryCounts = query("MATCH (f:Antlr:ScannedFile)-[:HAS_CHILD]->(n:Antlr:Node:Entry) " +
+                "RETURN count(n) AS entries").getColumn("entries");
+        assertThat(entryCounts).containsExactly(24L);
+        var scannedFiles = query("MATCH (f:Antlr:ScannedFile)-[:HAS_CHILD]->(n:Antlr:Node:Entry) " +
+                "WITH f, count(n) AS entries WHERE entries = 6 RETURN f").getColumn("f");
+        assertThat(scannedFiles).hasSize(4);
+    }
+
+    @Test
+    void testParallelParsingOnlyParsesScannedFiles(@TempDir Path directory) throws IOException {
+        // the parser records every word it parses, so a file parsed in vain would show up as well
+        Files.writeString(directory.resolve("Probe.g4"),
+                "grammar Probe;\n" +
+                "file : WORD EOF { System.setProperty(\"antlr.probe.\" + $WORD.text, \"parsed\"); } ;\n" +
+                "WORD : [a-z]+ ;\n" +
+                "WS : [ \\t\\r\\n]+ -> skip ;\n");
+        var configFile = directory.resolve("probe.yaml");
+        Files.writeString(configFile,
+                "jqassistant:\n" +
+                "  plugin:\n" +
+                "    antlr:\n" +
+                "      parallelism: 2\n" +
+                "      queueDepth: 2\n" +
+                "      grammars:\n" +
+                "        - grammarFile: Probe.g4\n" +
+                "          grammarRoot: \"file\"\n" +
+                "          fileExtension: \".probe\"\n");
+        var scannedFile = directory.resolve("scanned.probe");
+        Files.writeString(scannedFile, "scanned\n");
+        Files.writeString(directory.resolve("sibling.probe"), "sibling\n");
+        System.clearProperty("antlr.probe.scanned");
+        System.clearProperty("antlr.probe.sibling");
+
+        getScanner(Map.of(CONFIG_PREFIX, configFile.toString()))
+                .scan(scannedFile.toFile(), store.create(FileDescriptor.class), scannedFile.toString(), DefaultScope.NONE);
+        getScanner(Map.of(CONFIG_PREFIX, CONFIG_FOLDER + "config.yaml"));
+
+        assertThat(System.getProperty("antlr.probe.scanned")).isEqualTo("parsed");
+        assertThat(System.getProperty("antlr.probe.sibling")).isNull();
+        var words = query("MATCH (:Antlr:ScannedFile)-[:HAS_CHILD]->(n:Antlr:Node) RETURN n.text AS text").getColumn("text");
+        assertThat(words).contains("scanned").doesNotContain("sibling");
+    }
+
+    @Test
+    void testTwoStageParsing(){
+        var file = new File("src/test/resources/logging/output.logging");
+        var fileDescriptor = store.create(FileDescriptor.class);
+        Map<String, Object> properties = Map.of(CONFIG_PREFIX, CONFIG_FOLDER + "twoStageParsing.yaml");
+
+        getScanner(properties).scan(file, fileDescriptor, file.getAbsolutePath(), DefaultScope.NONE);
+
+        var entries = query("MATCH (:Antlr:ScannedFile)-[:HAS_CHILD]->(n:Antlr:Node:Entry) RETURN n").getColumn("n");
+        assertThat(entries).hasSize(6);
+    }
+
+    @Test
+    void testTwoStageParsingFallsBackToLlPrediction(@TempDir Path directory) throws IOException {
+        // SLL prediction merges the contexts e is called from and wrongly matches 34 as e, full LL does not
+        Files.writeString(directory.resolve("Conflict.g4"),
+                "grammar Conflict;\n" +
+                "s : '$' a EOF | '@' b EOF ;\n" +
+                "a : e ID ;\n" +
+                "b : e INT ID ;\n" +
+                "e : INT | ;\n" +
+                "INT : [0-9]+ ;\n" +
+                "ID : [a-z]+ ;\n" +
+                "WS : [ \\t\\r\\n]+ -> skip ;\n");
+        var file = directory.resolve("input.conflict");
+        Files.writeString(file, "@ 34 abc\n");
+        var metricsFile = directory.resolve("metrics.json");
+
+        getScanner(Map.of(CONFIG_PREFIX, writeConflictConfig(directory, "normal.yaml", "", "").toString()))
+                .scan(file.toFile(), store.create(FileDescriptor.class), file.toString(), DefaultScope.NONE);
+        getScanner(Map.of(CONFIG_PREFIX, writeConflictConfig(directory, "twoStage.yaml",
+                "      metricsFile: metrics.json\n", "          twoStageParsing: true\n").toString()))
+                .scan(file.toFile(), store.create(FileDescriptor.class), file.toString(), DefaultScope.NONE);
+        // configuring the plugin for the next scan finishes the previous one
+        getScanner(Map.of(CONFIG_PREFIX, CONFIG_FOLDER + "config.yaml"));
+
+        assertThat(Files.readString(metricsFile)).contains("\"Conflict\": {\"files\": 1", "\"twoStageFallbacks\": 1");
+        List<List<String>> trees = query("MATCH (f:Antlr:ScannedFile)-[:HAS_CHILD*]->(n:Antlr:Node) " +
+                "WITH f, [label IN labels(n) WHERE NOT label IN ['Antlr', 'Node']][0] + ':' + coalesce(n.text, '') AS node " +
+                "ORDER BY node WITH f, collect(node) AS nodes RETURN nodes").getColumn("nodes");
+        assertThat(trees).hasSize(2);
+        assertThat(trees.get(0)).contains("B:34abc").isEqualTo(trees.get(1));
+    }
+
+    private static Path writeConflictConfig(Path directory, String fileName, String options, String grammarOptions)
+            throws IOException {
+        var configFile = directory.resolve(fileName);
+        Files.writeString(configFile,
+                "jqassistant:\n" +
+                "  plugin:\n" +
+                "    antlr:\n" +
+                options +
+                "      grammars:\n" +
+                "        - grammarFile: Conflict.g4\n" +
+                "          grammarRoot: \"s\"\n" +
+                "          fileExtension: \".conflict\"\n" +
+                grammarOptions);
+        return configFile;
+    }
+
+    @Test
+    void testStreaming(){
+        var file = new File("src/test/resources/logging/output.logging");
+        var fileDescriptor = store.create(FileDescriptor.class);
+        Map<String, Object> properties = Map.of(CONFIG_PREFIX, CONFIG_FOLDER + "streaming.yaml");
+
+        getScanner(properties).scan(file, fileDescriptor, file.getAbsolutePath(), DefaultScope.NONE);
+
+        var entries = query("MATCH (:Antlr:ScannedFile)-[:HAS_CHILD]->(n:Antlr:Node:Entry) RETURN n").getColumn("n");
+        assertThat(entries).hasSize(6);
+        var children = query("MATCH (n:Entry)-[:HAS_CHILD]->(c:Antlr:Node) " +
+                "WHERE n.text CONTAINS '2018-May-05 14:20:18 INFO some error occurred' RETURN c.text AS text").getColumn("text");
+        assertThat(children).contains("2018-May-05 14:20:18", "INFO", "some error occurred");
+    }
+
+    @Test
+    void testStreamingLeftRecursiveRules(){
+        var file = new File("src/test/resources/sum/numbers.sum");
+        var nodesQuery = "MATCH (:Antlr:ScannedFile)-[:HAS_CHILD*]->(n:Antlr:Node) RETURN count(n) AS nodes";
+
+        getScanner(Map.of(CONFIG_PREFIX, CONFIG_FOLDER + "sum.yaml"))
+                .scan(file, store.create(FileDescriptor.class), file.getAbsolutePath(), DefaultScope.NONE);
+        List<Long> bufferedNodeCounts = query(nodesQuery).getColumn("nodes");
+        query("MATCH (n) DETACH DELETE n");
+        getScanner(Map.of(CONFIG_PREFIX, CONFIG_FOLDER + "sumStreaming.yaml"))
+                .scan(file, store.create(FileDescriptor.class), file.getAbsolutePath(), DefaultScope.NONE);
+
+        List<Long> streamedNodeCounts = query(nodesQuery).getColumn("nodes");
+        assertThat(streamedNodeCounts).isEqualTo(bufferedNodeCounts).containsExactly(19L);
+        var lastExpressions = query("MATCH (:Antlr:ScannedFile)-[:HAS_CHILD]->(n:Antlr:Node:Expr {text: '6'}) RETURN n").getColumn("n");
+        assertThat(lastExpressions).hasSize(1);
+    }
+
+    @Test
+    void testDeeplyNestedInput(@TempDir Path directory) throws IOException {
+        // the generated parser recurses for every pair of parentheses, which limits their nesting on a default stack
+        var nestedEquation = directory.resolve("nested.equation");
+        Files.writeString(nestedEquation, "x = " + "(".repeat(1000) + "1" + ")".repeat(1000) + "\n");
+        // left-recursive rules are parsed in a loop, but the tree gets one level deeper for every operator
+        var longSum = directory.resolve("long.sum");
+        Files.writeString(longSum, "1" + " + 1".repeat(10000) + "\n");
+        var scanner = getScanner(Map.of(CONFIG_PREFIX, CONFIG_FOLDER + "deeplyNested.yaml"));
+
+        for (var file : List.of(nestedEquation, longSum)) {
+            scanner.scan(file.toFile(), store.create(FileDescriptor.class), file.toString(), DefaultScope.NONE);
+        }
+
+        List<ScannedFileDescriptor> scannedFiles = query("MATCH (f:Antlr:ScannedFile) RETURN f").getColumn("f");
+        assertThat(scannedFiles).extracting(ScannedFileDescriptor::getMaxDepth).containsExactlyInAnyOrder(5007, 10002);
+        var innermostNumbers = query("MATCH (n:Antlr:Node:Scientific) RETURN count(n) AS nodes").getColumn("nodes");
+        assertThat(innermostNumbers).containsExactly(1L);
+    }
+
+    @Test
+    void testIncrementalScan(@TempDir Path directory) throws IOException {
+        var scanner = getScanner(Map.of(CONFIG_PREFIX, CONFIG_FOLDER + "incremental.yaml"));
+        var file = directory.resolve("output.logging");
+        Files.copy(Path.of("src/test/resources/logging/output.logging"), file);
+        var entriesQuery = "MATCH (:Antlr:ScannedFile)-[:HAS_CHILD]->(n:Antlr:Node:Entry) RETURN id(n) AS id";
+
+        FileDescriptor fileDescriptor = scanner.scan(file.toFile(), store.create(FileDescriptor.class), file.toString(), DefaultScope.NONE);
+        var entryIds = query(entriesQuery).getColumn("id");
+        assertThat(entryIds).hasSize(6);
+
+        fileDescriptor = scanner.scan(file.toFile(), fileDescriptor, file.toString(), DefaultScope.NONE);
+        assertThat(query(entriesQuery).getColumn("id")).containsExactlyInAnyOrderElementsOf(entryIds);
+
+        Files.writeString(file, "2018-May-05 14:20:30 INFO one more entry\n", StandardOpenOption.APPEND);
+        scanner.scan(file.toFile(), fileDescriptor, file.toString(), DefaultScope.NONE);
+        assertThat(query(entriesQuery).getColumn("id")).hasSize(7);
+        assertThat(query("MATCH (f:Antlr:ScannedFile) RETURN f").getColumn("f")).hasSize(1);
+        var nodeCounts = query("MATCH (n:Antlr:Node) WHERE NOT (:ScannedFile)-[:HAS_CHILD*]->(n) RETURN count(n) AS nodes").getColumn("nodes");
+        assertThat(nodeCounts).containsExactly(0L);
+    }
+
+    @Test
+    void testIncrementalScanWithChangedGrammarRoot(@TempDir Path directory) throws IOException {
+        var file = directory.resolve("output.logging");
+        Files.copy(Path.of("src/test/resources/logging/output.logging"), file);
+
+        FileDescriptor fileDescriptor = getScanner(Map.of(CONFIG_PREFIX, CONFIG_FOLDER + "incremental.yaml"))
+                .scan(file.toFile(), store.create(FileDescriptor.class), file.toString(), DefaultScope.NONE);
+        getScanner(Map.of(CONFIG_PREFIX, CONFIG_FOLDER + "incrementalEntry.yaml"))
+                .scan(file.toFile(), fileDescriptor, file.toString(), DefaultScope.NONE);
+
+        var logFileCounts = query("MATCH (f:Antlr:ScannedFile:Log) RETURN count(f) AS files").getColumn("files");
+        assertThat(logFileCounts).containsExactly(0L);
+        assertThat(query("MATCH (f:Antlr:ScannedFile:Entry) RETURN f").getColumn("f")).hasSize(1);
+        var nodeCounts = query("MATCH (n:Antlr:Node) WHERE NOT (:ScannedFile)-[:HAS_CHILD*]->(n) RETURN count(n) AS nodes").getColumn("nodes");
+        assertThat(nodeCounts).containsExactly(0L);
+    }
+
+    @Test
+    void testExcludedFileLocationPattern(){
+        var file = new File("src/test/resources/logging/output.logging");
+        var fileDescriptor = store.create(FileDescriptor.class);
+        Map<String, Object> properties = Map.of(CONFIG_PREFIX, CONFIG_FOLDER + "excludedFileLocationPattern.yaml");
+
+        getScanner(properties).scan(file, fileDescriptor, file.getAbsolutePath(), DefaultScope.NONE);
+
+        var scannedFileCounts = query("MATCH (f:Antlr:ScannedFile) RETURN count(f) AS files").getColumn("files");
+        assertThat(scannedFileCounts).containsExactly(0L);
+    }
+
+    @Test
+    void testExcludedFileLocationPatternInBaseDirectory(@TempDir Path directory) throws IOException {
+        Files.copy(Path.of("src/test/resources/logging/Logging.g4"), directory.resolve("Logging.g4"));
+        var configFile = directory.resolve("logging.yaml");
+        Files.writeString(configFile,
+                "jqassistant:\n" +
+                "  plugin:\n" +
+                "    antlr:\n" +
+                "      grammars:\n" +
+                "        - grammarFile: Logging.g4\n" +
+                "          grammarRoot: \"log\"\n" +
+                "          fileExtension: \".logging\"\n" +
+                "          excludedFileLocations:\n" +
+                "            - \"**/skipped.logging\"\n");
+        Files.createDirectories(directory.resolve("nested"));
+        var files = List.of(directory.resolve("skipped.logging"), directory.resolve("nested/skipped.logging"),
+                directory.resolve("kept.logging"));
+        for (Path file : files) {
+            Files.copy(Path.of("src/test/resources/logging/output.logging"), file);
+        }
+
+        var scanner = getScanner(Map.of(CONFIG_PREFIX, configFile.toString()));
+        for (Path file : files) {
+            scanner.scan(file.toFile(), store.create(FileDescriptor.class), file.toString(), DefaultScope.NONE);
+        }
+
+        // "**/" matches files directly in the directory of the configuration as well as in its subdirectories
+        var scannedFileCounts = query("MATCH (f:Antlr:ScannedFile) RETURN count(f) AS files").getColumn("files");
+        assertThat(scannedFileCounts).containsExactly(1L);
+    }
+
+    @Test
+    void testScanMetrics() throws IOException {
+        var metricsFile = Path.of("target/antlr-scan-metrics.json");
+        Files.deleteIfExists(metricsFile);
+        var file = new File("src/test/resources/logging/output.logging");
+        var fileDescriptor = store.create(FileDescriptor.class);
+        Map<String, Object> properties = Map.of(CONFIG_PREFIX, CONFIG_FOLDER + "metrics.yaml");
+
+        getScanner(properties).scan(file, fileDescriptor, file.getAbsolutePath(), DefaultScope.NONE);
+        assertThat(metricsFile).doesNotExist();
+        // configuring the plugin for the next scan finishes the previous one
+        getScanner(Map.of(CONFIG_PREFIX, CONFIG_FOLDER + "config.yaml"));
+
+        assertThat(metricsFile).exists();
+        var metrics = Files.readString(metricsFile);
+        assertThat(metrics).contains("\"Logging\": {\"files\": 1", "\"slowestFiles\"", "output.logging");
+    }
+
+    @Test
+    void testProfiling(){
+        var file = new File("src/test/resources/dot/cluster.dot");
+        var fileDescriptor = store.create(FileDescriptor.class);
+        Map<String, Object> properties = Map.of(CONFIG_PREFIX, CONFIG_FOLDER + "profiling.yaml");
+
+        getScanner(properties).scan(file, fileDescriptor, file.getAbsolutePath(), DefaultScope.NONE);
+
+        var tokenCounts = query("MATCH (f:Antlr:ScannedFile) RETURN f.tokenCount AS tokens").getColumn("tokens");
+        assertThat(tokenCounts).containsExactly(108L);
+        var depths = query("MATCH (f:Antlr:ScannedFile) RETURN f.maxDepth AS depth").getColumn("depth");
+        assertThat(depths).doesNotContainNull();
+        var rules = query("MATCH (:Antlr:ScannedFile)-[:HAS_RULE_PROFILE]->(p:Antlr:RuleProfile) RETURN p.rule AS rule").getColumn("rule");
+        assertThat(rules).contains("stmt");
+    }
+
+    @Test
+    void testDfaStatesAccumulateOverFiles(@TempDir Path directory) throws IOException {
+        var scanner = getScanner(Map.of(CONFIG_PREFIX, CONFIG_FOLDER + "profiling.yaml"));
+        var clusterFile = new File("src/test/resources/dot/cluster.dot");
+        var smallFile = directory.resolve("small.dot");
+        Files.writeString(smallFile, "digraph { a -> b; }\n");
+
+        scanner.scan(clusterFile, store.create(FileDescriptor.class), clusterFile.getAbsolutePath(), DefaultScope.NONE);
+        scanner.scan(smallFile.toFile(), store.create(FileDescriptor.class), smallFile.toString(), DefaultScope.NONE);
+
+        // the DFA cache of the grammar is kept from file to file, so it never shrinks, even for a smaller file
+        List<Long> dfaStates = query("MATCH (f:Antlr:ScannedFile) RETURN f.dfaStates AS states ORDER BY f.tokenCount DESC").getColumn("states");
+        assertThat(dfaStates).hasSize(2).doesNotContainNull();
+        assertThat(dfaStates.get(1)).isGreaterThanOrEqualTo(dfaStates.get(0));
+    }
+
+    @Test
+    void testTreePruning(){
+        var file = new File("src/test/resources/dot/cluster.dot");
+        var fileDescriptor = store.create(FileDescriptor.class);
+        Map<String, Object> properties = Map.of(CONFIG_PREFIX, CONFIG_FOLDER + "treePruning.yaml");
+
+        getScanner(properties).scan(file, fileDescriptor, file.getAbsolutePath(), DefaultScope.NONE);
+
+        var attributeLists = query("MATCH (n:Antlr:Node:Attr_list) RETURN n.text AS text").getColumn("text");
+        assertThat(attributeLists).contains("[style=filled,color=white]");
+        var attributeListChildren = query("MATCH (:Antlr:Node:Attr_list)-[:HAS_CHILD]->(n) RETURN count(n) AS nodes").getColumn("nodes");
+        assertThat(attributeListChildren).containsExactly(0L);
+        var collapsedStatements = query("MATCH (n:Antlr:Node:Stmt:Edge_stmt) RETURN n").getColumn("n");
+        assertThat(collapsedStatements).hasSize(9);
+        var semicolons = query("MATCH (n:Antlr:Node) WHERE n.text = ';' RETURN count(n) AS nodes").getColumn("nodes");
+        assertThat(semicolons).containsExactly(0L);
+    }
+
+    @Test
+    void testTruncatedRuleNodeText(){
+        var file = new File("src/test/resources/equation/weird.equation");
+        var fileDescriptor = store.create(FileDescriptor.class);
+        Map<String, Object> properties = Map.of(CONFIG_PREFIX, CONFIG_FOLDER + "ruleNodeTextTruncated.yaml");
+
+        getScanner(properties).scan(file, fileDescriptor, file.getAbsolutePath(), DefaultScope.NONE);
+
+        List<String> expressionTexts = query("MATCH (:Antlr:ScannedFile)-[:HAS_CHILD]->(n:Antlr:Node:Expression) RETURN n.text AS text").getColumn("text");
+        assertThat(expressionTexts).containsExactlyInAnyOrder("x", "cos(x");
+        var rootTexts = query("MATCH (f:Antlr:ScannedFile) RETURN f.text AS text").getColumn("text");
+        assertThat(rootTexts).containsExactly("x=cos");
+        // terminal nodes always keep their full text
+        var terminalCounts = query("MATCH (n:Antlr:Node) WHERE n.text = '12' RETURN count(n) AS nodes").getColumn("nodes");
+        assertThat(terminalCounts).containsExactly(1L);
+    }
+
+    @Test
+    void testNoRuleNodeText(){
+        var file = new File("src/test/resources/equation/weird.equation");
+        var fileDescriptor = store.create(FileDescriptor.class);
+        Map<String, Object> properties = Map.of(CONFIG_PREFIX, CONFIG_FOLDER + "ruleNodeTextNone.yaml");
+
+        getScanner(properties).scan(file, fileDescriptor, file.getAbsolutePath(), DefaultScope.NONE);
+
+        var ruleTexts = query("MATCH (n:Antlr:Node:Expression) RETURN n.text AS text").getColumn("text");
+        assertThat(ruleTexts).isNotEmpty().containsOnlyNulls();
+        var rootTexts = query("MATCH (f:Antlr:ScannedFile) RETURN f.text AS text").getColumn("text");
+        assertThat(rootTexts).containsOnlyNulls();
+        var terminalTexts = query("MATCH (n:Antlr:Node:TerminalNode) RETURN n.text AS text").getColumn("text");
+        assertThat(terminalTexts).isNotEmpty().doesNotContainNull();
+    }
+
+    @Test
+    void testTruncatedRuleNodeTextKeepsSurrogatePairs(@TempDir Path directory) throws IOException {
+        Files.writeString(directory.resolve("Chars.g4"),
+                "grammar Chars;\n" +
+                "text : word EOF ;\n" +
+                "word : CHAR+ ;\n" +
+                "CHAR : . ;\n");
+        var configFile = directory.resolve("chars.yaml");
+        Files.writeString(configFile,
+                "jqassistant:\n" +
+                "  plugin:\n" +
+                "    antlr:\n" +
+                "      ruleNodeText: truncated\n" +
+                "      ruleNodeTextMaxLength: 2\n" +
+                "      grammars:\n" +
+                "        - grammarFile: Chars.g4\n" +
+                "          grammarRoot: \"text\"\n" +
+                "          fileExtension: \".chars\"\n");
+        var file = directory.resolve("emoji.chars");
+        Files.writeString(file, "a\uD83D\uDE00b");
+
+        getScanner(Map.of(CONFIG_PREFIX, configFile.toString()))
+                .scan(file.toFile(), store.create(FileDescriptor.class), file.toString(), DefaultScope.NONE);
+
+        // the limit falls between the two chars of the emoji, which is left out instead of being cut in half
+        var wordTexts = query("MATCH (n:Antlr:Node:Word) RETURN n.text AS text").getColumn("text");
+        assertThat(wordTexts).containsExactly("a");
+        var rootTexts = query("MATCH (f:Antlr:ScannedFile) RETURN f.text AS text").getColumn("text");
+        assertThat(rootTexts).containsExactly("a");
+    }
+
+    @Test
+    void testRuleNodeOffsets() throws IOException {
+        var file = new File("src/test/resources/equation/weird.equation");
+        var fileDescriptor = store.create(FileDescriptor.class);
+        Map<String, Object> properties = Map.of(CONFIG_PREFIX, CONFIG_FOLDER + "ruleNodeOffsets.yaml");
+
+        getScanner(properties).scan(file, fileDescriptor, file.getAbsolutePath(), DefaultScope.NONE);
+
+        var ruleTexts = query("MATCH (n:Antlr:Node:Expression) RETURN n.text AS text").getColumn("text");
+        assertThat(ruleTexts).containsOnlyNulls();
+        List<ScannedFileDescriptor> scannedFiles = query("MATCH (f:Antlr:ScannedFile) RETURN f").getColumn("f");
+        List<NodeDescriptor> expressions = query("MATCH (:Antlr:ScannedFile)-[:HAS_CHILD]->(n:Antlr:Node:Expression) " +
+                "RETURN n ORDER BY n.startOffset DESC").getColumn("n");
+        assertThat(expressions.get(0).getLine()).isEqualTo(1);
+        assertThat(SourceText.of(scannedFiles.get(0)).getText(expressions.get(0))).isEqualTo("cos (x, 12, 2*cos(7))");
+        assertThat(scannedFiles.get(0).getStartOffset()).isZero();
+        assertThat(scannedFiles.get(0).getLine()).isEqualTo(1);
+        assertThat(SourceText.of(scannedFiles.get(0)).getText(scannedFiles.get(0))).isEqualTo(Files.readString(file.toPath()));
+    }
+
+    @Test
+    void testGrammarRootText() throws IOException {
+        var file = new File("src/test/resources/logging/output.logging");
+        var fileDescriptor = store.create(FileDescriptor.class);
+
+        getScanner(Map.of(CONFIG_PREFIX, CONFIG_FOLDER + "config.yaml")).scan(file, fileDescriptor, file.getAbsolutePath(), DefaultScope.NONE);
+
+        var rootTexts = query("MATCH (f:Antlr:ScannedFile) RETURN f.text AS text").getColumn("text");
+        assertThat(rootTexts).containsExactly(Files.readString(file.toPath()));
+    }
+
+    @Test
+    void testInternTokens(){
+        var file = new File("src/test/resources/logging/output.logging");
+        var fileDescriptor = store.create(FileDescriptor.class);
+        Map<String, Object> properties = Map.of(CONFIG_PREFIX, CONFIG_FOLDER + "internTokens.yaml");
+
+        getScanner(properties).scan(file, fileDescriptor, file.getAbsolutePath(), DefaultScope.NONE);
+
+        var infoTerminals = query("MATCH (n:Antlr:Node)-[:OF_TOKEN]->(:Antlr:Token {type: \"'INFO'\", text: 'INFO'}) " +
+                "WITH f, count(n) AS nodes RETURN nodes").getColumn("nodes");
+        assertThat(infoTerminals).containsExactly(3L);
+        var infoTokens = query("MATCH (t:Antlr:Token {text: 'INFO'}) RETURN count(t) AS tokens").getColumn("tokens");
+        assertThat(infoTokens).containsExactly(1L);
+        var terminalTexts = query("MATCH (n:Antlr:Node)-[:OF_TOKEN]->(:Antlr:Token) RETURN n.text AS text").getColumn("text");
+        assertThat(terminalTexts).containsOnlyNulls();
+    }
+
+    @Test
+    void testInternTokensPerGrammar(){
+        var scanner = getScanner(Map.of(CONFIG_PREFIX, CONFIG_FOLDER + "internTokensGrammars.yaml"));
+        for (var file : List.of(new File("src/test/resources/equation/sum.equation"), new File("src/test/resources/sum/numbers.sum"))) {
+            scanner.scan(file, store.create(FileDescriptor.class), file.getAbsolutePath(), DefaultScope.NONE);
+        }
+
+        var plusGrammars = query("MATCH (t:Antlr:Token {type: \"'+'\", text: '+'}) RETURN t.grammar AS grammar").getColumn("grammar");
+        assertThat(plusGrammars).containsExactlyInAnyOrder("equation", "Sum");
+        var sumPlusTerminals = query("MATCH (:Antlr:ScannedFile:Prog)-[:HAS_CHILD*]->(n:Antlr:Node)-[:OF_TOKEN]->(t:Antlr:Token {text: '+'}) " +
+                "RETURN DISTINCT t.grammar AS grammar").getColumn("grammar");
+        assertThat(sumPlusTerminals).containsExactly("Sum");
+    }
+
+    @Test
+    void testWarmUp() throws IOException {
+        var parserCache = Path.of("target/warm-up-cache");
+        if (Files.exists(parserCache)) {
+            try (Stream<Path> paths = Files.walk(parserCache)) {
+                paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+        Map<String, Object> properties = Map.of(CONFIG_PREFIX, CONFIG_FOLDER + "warmUp.yaml");
+
+        var scanner = getScanner(properties);
+
+        assertThat(parserCache.toFile().list()).hasSize(1).allMatch(directory -> directory.startsWith("Logging-"));
+        var file = new File("src/test/resources/logging/output.logging");
+        scanner.scan(file, store.create(FileDescriptor.class), file.getAbsolutePath(), DefaultScope.NONE);
+        var entries = query("MATCH (n:Antlr:Node:Entry) RETURN n").getColumn("n");
+        assertThat(entries).hasSize(6);
+    }
+
+    @Test
+    void testWarmUpFailsOnBrokenGrammar(){
+        Map<String, Object> properties = Map.of(CONFIG_PREFIX, CONFIG_FOLDER + "warmUpBrokenGrammar.yaml");
+
+        assertThrows(RuntimeException.class, () -> getScanner(properties));
+    }
+
+    @Test
+    void testParserJar() throws IOException {
+        var parserJar = new File("target/antlr-grammars.jar");
+        new GrammarPackager(new File(CONFIG_FOLDER + "config.yaml"), "1.0.0").packageGrammars(parserJar);
+        var file = new File("src/test/resources/logging/output.logging");
+        var fileDescriptor = store.create(FileDescriptor.class);
+        Map<String, Object> properties = Map.of(CONFIG_PREFIX, CONFIG_FOLDER + "parserJar.yaml");
+
+        getScanner(properties).scan(file, fileDescriptor, file.getAbsolutePath(), DefaultScope.NONE);
+
+        var entries = query("MATCH (n:Antlr:Node:Entry) RETURN n").getColumn("n");
+        assertThat(entries).hasSize(6);
+        try (var jar = new JarFile(parserJar)) {
+            var manifest = jar.getManifest();
+            assertThat(manifest.getMainAttributes().getValue("Antlr-Grammars")).isEqualTo("Logging");
+            assertThat(manifest.getEntries()).hasSize(1);
+            var grammarEntry = manifest.getEntries().keySet().iterator().next();
+            assertThat(manifest.getAttributes(grammarEntry).getValue("Antlr-Grammar-Name")).isEqualTo("Logging");
+            assertThat(jar.getJarEntry(grammarEntry + "LoggingParser.class")).isNotNull();
+        }
+    }
+
+    @Test
+    void testParserJarWithGrammarsOfTheSameName(@TempDir Path directory) throws IOException {
+        var grammar = Files.readString(Path.of("src/test/resources/logging/Logging.g4"));
+        Files.createDirectories(directory.resolve("info"));
+        Files.writeString(directory.resolve("info/Logging.g4"), grammar);
+        Files.createDirectories(directory.resolve("warning"));
+        Files.writeString(directory.resolve("warning/Logging.g4"), grammar.replace("'DEBUG'", "'DEBUG' | 'WARN'"));
+        var packagedConfig = directory.resolve("packaged.yaml");
+        Files.writeString(packagedConfig, "jqassistant:\n  plugin:\n    antlr:\n      grammars:\n" +
+                "        - grammarFile: info/Logging.g4\n          grammarRoot: \"log\"\n          fileExtension: \".logging\"\n" +
+                "        - grammarFile: warning/Logging.g4\n          grammarRoot: \"log\"\n          fileExtension: \".warnings\"\n");
+        new GrammarPackager(packagedConfig.toFile(), "1.0.0").packageGrammars(directory.resolve("grammars.jar").toFile());
+        var scannedConfig = directory.resolve("scanned.yaml");
+        Files.writeString(scannedConfig, "jqassistant:\n  plugin:\n    antlr:\n      grammars:\n" +
+                "        - parserJar: grammars.jar\n          grammarName: \"Logging\"\n          grammarRoot: \"log\"\n          fileExtension: \".warnings\"\n");
+        var file = directory.resolve("disk.warnings");
+        Files.writeString(file, "2018-May-05 14:20:30 WARN disk almost full\n");
+
+        getScanner(Map.of(CONFIG_PREFIX, scannedConfig.toString())).scan(file.toFile(), store.create(FileDescriptor.class), file.toString(), DefaultScope.NONE);
+
+        var levels = query("MATCH (n:Antlr:Node:Level) RETURN n.text AS text").getColumn("text");
+        assertThat(levels).containsExactly("WARN");
+        try (var jar = new JarFile(directory.resolve("grammars.jar").toFile())) {
+            assertThat(jar.getManifest().getEntries()).hasSize(2);
+        }
+    }
+
+    @Test
+    void testCompileInMemory(){
+        var file = new File("src/test/resources/equation/weird.equation");
+        var fileDescriptor = store.create(FileDescriptor.class);
+        Map<String, Object> properties = Map.of(CONFIG_PREFIX, CONFIG_FOLDER + "compileInMemory.yaml");
+
+        getScanner(properties).scan(file, fileDescriptor, file.getAbsolutePath(), DefaultScope.NONE);
+
+        var nodes = query("MATCH (:Antlr:ScannedFile)-[:HAS_CHILD]->(n:Antlr:Node) RETURN n").getColumn("n");
+        assertThat(nodes).hasSizeGreaterThan(0);
+        assertThat(new File("src/test/resources/equation/.antlrPluginequation")).doesNotExist();
+    }
+
+    @Test
+    void testInterpreterMode(){
+        var file = new File("src/test/resources/logging/output.logging");
+        var fileDescriptor = store.create(FileDescriptor.class);
+        Map<String, Object> properties = Map.of(CONFIG_PREFIX, CONFIG_FOLDER + "interpreterMode.yaml");
+
+        getScanner(properties).scan(file, fileDescriptor, file.getAbsolutePath(), DefaultScope.NONE);
+
+        var entries = query("MATCH (n:Antlr:Node:Entry) RETURN n").getColumn("n");
+        assertThat(entries).hasSize(6);
+        var timestamps = query("MATCH (n:Antlr:Node:Timestamp) RETURN n.text AS text").getColumn("text");
+        assertThat(timestamps).contains("2018-May-05 14:20:18");
+    }
+
+    @Test
+    void testLabeledAlternatives(@TempDir Path directory) throws IOException {
+        var file = writeNumbers(directory);
+        Map<String, Object> properties = Map.of(CONFIG_PREFIX, writeLabeledSumConfig(directory, "").toString());
+
+        getScanner(properties).scan(file, store.create(FileDescriptor.class), file.getAbsolutePath(), DefaultScope.NONE);
+
+        // every alternative of the rule has a context class of its own, which gives the label
+        var additions = query("MATCH (n:Antlr:Node:Add) RETURN n.text AS text").getColumn("text");
+        assertThat(additions).containsExactlyInAnyOrder("1+2", "3+4+5", "3+4");
+        var numbers = query("MATCH (n:Antlr:Node:Number) RETURN count(n) AS numbers").getColumn("numbers");
+        assertThat(numbers).containsExactly(6L);
+        var expressions = query("MATCH (n:Antlr:Node:Expr) RETURN count(n) AS expressions").getColumn("expressions");
+        assertThat(expressions).containsExactly(0L);
+    }
+
+    @Test
+    void testLabeledAlternativesInInterpreterMode(@TempDir Path directory) throws IOException {
+        var file = writeNumbers(directory);
+        Map<String, Object> properties = Map.of(CONFIG_PREFIX, writeLabeledSumConfig(directory, "          mode: interpreter\n").toString());
+
+        getScanner(properties).scan(file, store.create(FileDescriptor.class), file.getAbsolutePath(), DefaultScope.NONE);
+
+        // interpreted rules are labeled by their name only
+        var expressions = query("MATCH (n:Antlr:Node:Expr) RETURN count(n) AS expressions").getColumn("expressions");
+        assertThat(expressions).containsExactly(9L);
+        var additions = query("MATCH (n:Antlr:Node:Add) RETURN count(n) AS additions").getColumn("additions");
+        assertThat(additions).containsExactly(0L);
+    }
+
+    private static Path writeLabeledSumConfig(Path directory, String options) throws IOException {
+        Files.writeString(directory.resolve("Sum.g4"),
+                "grammar Sum;\n" +
+                "prog : expr* EOF ;\n" +
+                "expr : expr '+' expr # Add\n" +
+                "     | INT # Number\n" +
+                "     ;\n" +
+                "INT : [0-9]+ ;\n" +
+                "WS : [ \\t\\r\\n]+ -> skip ;\n");
+        var configFile = directory.resolve("sum.yaml");
+        Files.writeString(configFile,
+                "jqassistant:\n" +
+                "  plugin:\n" +
+                "    antlr:\n" +
+                "      grammars:\n" +
+                "        - grammarFile: Sum.g4\n" +
+                "          grammarRoot: \"prog\"\n" +
+                "          fileExtension: \".sum\"\n" +
+                options);
+        return configFile;
+    }
+
+    private static File writeNumbers(Path directory) throws IOException {
+        var file = directory.resolve("numbers.sum");
+        Files.writeString(file, "1 + 2\n3 + 4 + 5\n6\n");
+        return file.toFile();
+    }
+
     @Test
     void testDeletionOfGeneratedFiles(@TempDir Path tempDir) throws IOException {
         var tempFileToBeScanned = prepareDotTempDir(tempDir);
@@ -71,9 +786,107 @@ public class ConfigurationIT extends AbstractPluginIT {
         var fileDescriptor = store.create(FileDescriptor.class);
         Map<String, Object> properties = Map.of("jqassistant.plugin.antlr.configLocation", deleteLexerAndParser.toString());
 
+        var temporaryDirectories = listTemporaryDirectories();
         getScanner(properties).scan(tempFileToBeScanned, fileDescriptor, tempFileToBeScanned.getAbsolutePath(), DefaultScope.NONE);
 
         assertThat(tempDir.toFile().listFiles()).hasSize(3);
+        // the generated files are gone before the plugin is configured for the next scan
+        for (Path temporaryDirectory : listTemporaryDirectories()) {
+            if (temporaryDirectories.contains(temporaryDirectory)) continue;
+            try (Stream<Path> files = Files.walk(temporaryDirectory)) {
+                assertThat(files.filter(Files::isRegularFile)).isEmpty();
+            }
+        }
+    }
+
+    @Test
+    void testDeletionOfGeneratedFilesAfterSeveralFiles(@TempDir Path tempDir) throws IOException {
+        var clusterFile = prepareDotTempDir(tempDir);
+        var smallFile = tempDir.resolve("small.dot");
+        Files.writeString(smallFile, "digraph { a -> b; }\n");
+        Map<String, Object> properties = Map.of(CONFIG_PREFIX, tempDir.resolve("deleteLexerAndParser.yaml").toString());
+
+        var temporaryDirectories = listTemporaryDirectories();
+        var scanner = getScanner(properties);
+        scanner.scan(clusterFile, store.create(FileDescriptor.class), clusterFile.getAbsolutePath(), DefaultScope.NONE);
+        scanner.scan(smallFile.toFile(), store.create(FileDescriptor.class), smallFile.toString(), DefaultScope.NONE);
+
+        // the lexer and parser generated for the first file are still used for the second one
+        var scannedFiles = query("MATCH (f:Antlr:ScannedFile)-[:HAS_CHILD]->(:Antlr:Node) RETURN count(DISTINCT f) AS files").getColumn("files");
+        assertThat(scannedFiles).containsExactly(2L);
+        var edges = query("MATCH (n:Antlr:Node:Edge_stmt) WHERE n.text = 'a->b' RETURN n").getColumn("n");
+        assertThat(edges).hasSize(1);
+        assertThat(tempDir.toFile().listFiles()).hasSize(4);
+        for (Path temporaryDirectory : listTemporaryDirectories()) {
+            if (temporaryDirectories.contains(temporaryDirectory)) continue;
+            try (Stream<Path> files = Files.walk(temporaryDirectory)) {
+                assertThat(files.filter(Files::isRegularFile)).isEmpty();
+            }
+        }
+    }
+
+    private static List<Path> listTemporaryDirectories() throws IOException {
+        try (Stream<Path> directories = Files.list(Path.of(System.getProperty("java.io.tmpdir")))) {
+            return directories.filter(directory -> directory.getFileName().toString().startsWith("jqassistant-antlr"))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    void testRegenerationAfterGrammarChange(@TempDir Path directory) throws IOException {
+        Map<String, Object> properties = Map.of(CONFIG_PREFIX, writeLoggingConfig(directory, "").toString());
+
+        scanLoggingFilesBeforeAndAfterGrammarChange(directory, properties);
+
+        var levels = query("MATCH (n:Antlr:Node:Level) RETURN n.text AS text").getColumn("text");
+        assertThat(levels).contains("WARN");
+        // neither the staging directory nor the replaced lexer and parser are left behind
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files.map(file -> file.getFileName().toString())).containsExactlyInAnyOrder(
+                    "Logging.g4", "logging.yaml", "info.logging", "warning.logging", ".antlrPluginLogging");
+        }
+    }
+
+    @Test
+    void testParserCacheDirectory(@TempDir Path directory) throws IOException {
+        Map<String, Object> properties = Map.of(CONFIG_PREFIX, writeLoggingConfig(directory, "      parserCacheDirectory: cache\n").toString());
+
+        scanLoggingFilesBeforeAndAfterGrammarChange(directory, properties);
+
+        // every version of the grammar is kept in its own directory
+        try (Stream<Path> versions = Files.list(directory.resolve("cache"))) {
+            assertThat(versions.map(version -> version.getFileName().toString()))
+                    .hasSize(2)
+                    .allMatch(version -> version.startsWith("Logging-"));
+        }
+        assertThat(directory.resolve(".antlrPluginLogging")).doesNotExist();
+    }
+
+    private static Path writeLoggingConfig(Path directory, String options) throws IOException {
+        Files.copy(Path.of("src/test/resources/logging/Logging.g4"), directory.resolve("Logging.g4"));
+        var configFile = directory.resolve("logging.yaml");
+        Files.writeString(configFile,
+                "jqassistant:\n" +
+                "  plugin:\n" +
+                "    antlr:\n" +
+                options +
+                "      grammars:\n" +
+                "        - grammarFile: Logging.g4\n" +
+                "          grammarRoot: \"log\"\n" +
+                "          fileExtension: \".logging\"\n");
+        return configFile;
+    }
+
+    private void scanLoggingFilesBeforeAndAfterGrammarChange(Path directory, Map<String, Object> properties) throws IOException {
+        var infoFile = directory.resolve("info.logging");
+        Files.writeString(infoFile, "2018-May-05 14:20:30 INFO disk checked\n");
+        getScanner(properties).scan(infoFile.toFile(), store.create(FileDescriptor.class), infoFile.toString(), DefaultScope.NONE);
+
+        var grammarFile = directory.resolve("Logging.g4");
+        Files.writeString(grammarFile, Files.readString(grammarFile).replace("'DEBUG'", "'DEBUG' | 'WARN'"));
+        var warningFile = directory.resolve("warning.logging");
+        Files.writeString(warningFile, "2018-May-05 14:20:30 WARN disk almost full\n");
+        getScanner(properties).scan(warningFile.toFile(), store.create(FileDescriptor.class), warningFile.toString(), DefaultScope.NONE);
     }
 
     private static File prepareDotTempDir(Path tempDir) throws IOException {
@@ -0,0 +1,108 @@
+package de.kontext_e.jqassistant.plugin.antlr.impl;
+
+import de.kontext_e.jqassistant.plugin.antlr.api.config.GrammarConfiguration;
+import org.antlr.v4.runtime.CharStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class GrammarWarmUpTest {
+
+    private GrammarConfiguration brokenGrammar;
+    private GrammarConfiguration validGrammar;
+    private final List<ParserRuntime> releasedParserRuntimes = new CopyOnWriteArrayList<>();
+    private final CountDownLatch released = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() throws IOException {
+        ConfigurationProvider configurationProvider = new ConfigurationProvider();
+        configurationProvider.loadConfigurationFrom(new File("src/test/resources/configFiles/warmUpBrokenGrammar.yaml"));
+        validGrammar = configurationProvider.getGrammarConfigurationFor(".logging");
+        brokenGrammar = configurationProvider.getGrammarConfigurationFor(".dot");
+    }
+
+    @Test
+    void testReleasesParserRuntimesFinishedAfterBrokenGrammar() throws InterruptedException {
+        CountDownLatch brokenGrammarFound = new CountDownLatch(1);
+        ParserRuntime parserRuntime = new StubParserRuntime();
+        GrammarWarmUp warmUp = new GrammarWarmUp(2, release());
+        warmUp.prepare(brokenGrammar, () -> {
+            throw new IOException("broken grammar");
+        });
+        // like a running java compiler, the preparation of the valid grammar can not be interrupted
+        warmUp.prepare(validGrammar, () -> {
+            awaitUninterruptibly(brokenGrammarFound);
+            return parserRuntime;
+        });
+
+        List<ParserRuntime> handedOver = new CopyOnWriteArrayList<>();
+        assertThrows(IllegalStateException.class, () -> warmUp.awaitAll((grammar, runtime) -> handedOver.add(runtime)));
+        brokenGrammarFound.countDown();
+
+        assertThat(released.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(releasedParserRuntimes).containsExactly(parserRuntime);
+        assertThat(handedOver).isEmpty();
+    }
+
+    @Test
+    void testHandsOverAllParserRuntimes() {
+        ParserRuntime parserRuntime = new StubParserRuntime();
+        GrammarWarmUp warmUp = new GrammarWarmUp(2, release());
+        warmUp.prepare(validGrammar, () -> parserRuntime);
+
+        List<ParserRuntime> handedOver = new CopyOnWriteArrayList<>();
+        warmUp.awaitAll((grammar, runtime) -> handedOver.add(runtime));
+
+        assertThat(handedOver).containsExactly(parserRuntime);
+        assertThat(releasedParserRuntimes).isEmpty();
+    }
+
+    private Consumer<ParserRuntime> release() {
+        return parserRuntime -> {
+            releasedParserRuntimes.add(parserRuntime);
+            released.countDown();
+        };
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class StubParserRuntime implements ParserRuntime {
+
+        @Override
+        public ParseResult parse(CharStream input) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ParseResult parseStreaming(CharStream input, Consumer<ParseResult> topLevelTrees) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,18 @@
+grammar Sum;
+
+prog
+    : expr* EOF
+    ;
+
+expr
+    : expr '+' expr
+    | INT
+    ;
+
+INT
+    : [0-9]+
+    ;
+
+WS
+    : [ \t\r\n]+ -> skip
+    ;